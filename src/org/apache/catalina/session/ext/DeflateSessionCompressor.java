@@ -0,0 +1,79 @@
+package org.apache.catalina.session.ext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DeflaterBEST_SPEEDѹ,ÿ߳һDeflaterInflater.
+ *
+ * @author wjw
+ */
+public class DeflateSessionCompressor implements SessionCompressor {
+	static final byte ID = 1;
+	static final String NAME = "deflate";
+
+	private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED, true);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	public byte getId() {
+		return ID;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] compress(byte[] data) throws IOException {
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		byte[] buf = new byte[Math.min(data.length + 64, 8192)];
+		while (!deflater.finished()) {
+			int n = deflater.deflate(buf);
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	public byte[] decompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException {
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		//nowrapģʽInflaterҪһֽ
+		byte[] input = new byte[length + 1];
+		System.arraycopy(data, offset, input, 0, length);
+		inflater.setInput(input);
+		byte[] result = new byte[uncompressedLength];
+		try {
+			int pos = 0;
+			while (pos < uncompressedLength) {
+				int n = inflater.inflate(result, pos, uncompressedLength - pos);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				pos += n;
+			}
+			if (pos != uncompressedLength) {
+				throw new IOException("corrupt deflate data: expected " + uncompressedLength + " bytes, got " + pos);
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("corrupt deflate data: " + ex.getMessage());
+		}
+		return result;
+	}
+}
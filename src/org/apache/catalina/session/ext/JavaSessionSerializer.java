@@ -0,0 +1,48 @@
+package org.apache.catalina.session.ext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.apache.catalina.util.CustomObjectInputStream;
+
+/**
+ * java׼л,ֵʵSerializable.Kryo,ǲҪΪֵκ.
+ *
+ * @author wjw
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+	static final String NAME = "java";
+
+	private volatile ClassLoader _classLoader;
+
+	public void init(ClassLoader classLoader) {
+		this._classLoader = classLoader;
+	}
+
+	public byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		try {
+			oos.writeObject(obj);
+		} finally {
+			oos.close();
+		}
+		return bos.toByteArray();
+	}
+
+	public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		ClassLoader classLoader = _classLoader;
+		if (classLoader == null) {
+			classLoader = Thread.currentThread().getContextClassLoader();
+		}
+		ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(data), classLoader);
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.wjw.kryo.wrapper.KryoSerializer;
+
+import redis.clients.jedis.BulkArgument;
+import redis.clients.util.RedisOutputStream;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * ȱʡлʽ,ǰKryoSerializer.write()/read()ʽͬ.
+ * <p>
+ * KryoʵKryoSerializer.getKryo()ÿ߳һʵ,OutputInputҲÿ߳һ,
+ * ÿζ仺.OutputĻҪ,MAX_RETAINED_BUFFER,ֹһ߳һֱռŴ󻺳.
+ * <p>
+ * SessionClassRegistryʱ,ʵԼĳSessionKryoʵ,úKryoSerializerͬ,ClassResolverSharedClassResolver.
+ * ʵwebӦõClassLoader,ܷThreadLocal(Connectoṟ߳webӦûþ),RedisManagerֹͣʱdestroy().
+ *
+ * @author wjw
+ */
+public class KryoSessionSerializer implements SessionSerializer {
+	static final String NAME = "kryo";
+
+	private static final int INITIAL_BUFFER = 1024;
+	private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final ThreadLocal<Output> OUTPUT = new ThreadLocal<Output>() {
+		@Override
+		protected Output initialValue() {
+			return new Output(INITIAL_BUFFER, -1);
+		}
+	};
+
+	private static final ThreadLocal<Input> INPUT = new ThreadLocal<Input>() {
+		@Override
+		protected Input initialValue() {
+			return new Input();
+		}
+	};
+
+	private static final ThreadLocal<Input> STREAM_INPUT = new ThreadLocal<Input>() {
+		@Override
+		protected Input initialValue() {
+			return new Input(INITIAL_BUFFER * 4);
+		}
+	};
+
+	private SessionClassRegistry _classRegistry;
+	private ClassLoader _classLoader;
+	//еʹSharedClassResolverKryoʵ
+	private final ConcurrentLinkedQueue<Kryo> _sharedKryos = new ConcurrentLinkedQueue<Kryo>();
+
+	/**
+	 * init()֮ǰ
+	 */
+	void setClassRegistry(SessionClassRegistry classRegistry) {
+		this._classRegistry = classRegistry;
+	}
+
+	public void init(ClassLoader classLoader) {
+		this._classLoader = classLoader;
+		if (_classRegistry != null) {
+			_sharedKryos.offer(newSharedKryo());
+		}
+	}
+
+	/**
+	 * ֹͣʱ,Kryoʵ
+	 */
+	void destroy() {
+		_sharedKryos.clear();
+	}
+
+	/**
+	 * ҪreleaseKryo()
+	 */
+	private Kryo borrowKryo() {
+		if (_classRegistry == null) {
+			return KryoSerializer.getKryo();
+		}
+		Kryo kryo = _sharedKryos.poll();
+		return (kryo == null) ? newSharedKryo() : kryo;
+	}
+
+	private void releaseKryo(Kryo kryo) {
+		if (_classRegistry != null) {
+			_sharedKryos.offer(kryo);
+		}
+	}
+
+	private Kryo newSharedKryo() {
+		Kryo kryo = new SessionKryo(new SharedClassResolver(_classRegistry));
+		kryo.setClassLoader((_classLoader != null) ? _classLoader : Thread.currentThread().getContextClassLoader());
+		return kryo;
+	}
+
+	public byte[] serialize(Object obj) throws IOException {
+		Output output = OUTPUT.get();
+		output.clear();
+		Kryo kryo = borrowKryo();
+		try {
+			kryo.writeClassAndObject(output, obj);
+			return output.toBytes();
+		} finally {
+			releaseKryo(kryo);
+			if (output.getBuffer().length > MAX_RETAINED_BUFFER) {
+				OUTPUT.remove();
+			}
+		}
+	}
+
+	/**
+	 * л̵߳Output,صBulkArgumentֱӴдredisӵ,ٸƳһbyte[].
+	 * ֵֻڱ߳һл֮ǰЧ.
+	 */
+	BulkArgument serializeBulk(Object obj) {
+		Output output = OUTPUT.get();
+		output.clear();
+		Kryo kryo = borrowKryo();
+		try {
+			kryo.writeClassAndObject(output, obj);
+		} finally {
+			releaseKryo(kryo);
+		}
+		final byte[] buffer = output.getBuffer();
+		final int length = output.position();
+		if (buffer.length > MAX_RETAINED_BUFFER) {
+			OUTPUT.remove();
+		}
+		return new BulkArgument() {
+			public int length() {
+				return length;
+			}
+
+			public void writeTo(RedisOutputStream os) throws IOException {
+				os.write(buffer, 0, length);
+			}
+		};
+	}
+
+	/**
+	 * ﷴл,InputĻÿ߳,ҪȰֵһbyte[]
+	 */
+	Object deserialize(InputStream in) {
+		Input input = STREAM_INPUT.get();
+		input.setInputStream(in);
+		Kryo kryo = borrowKryo();
+		try {
+			return kryo.readClassAndObject(input);
+		} finally {
+			releaseKryo(kryo);
+			input.setInputStream(null);
+		}
+	}
+
+	public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		Input input = INPUT.get();
+		input.setBuffer(data);
+		Kryo kryo = borrowKryo();
+		try {
+			return kryo.readClassAndObject(input);
+		} finally {
+			releaseKryo(kryo);
+			input.setBuffer(EMPTY); //Ҫһֱdata
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.apache.catalina.session.ext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+
+/**
+ * ÿredis(shard)һ۶.
+ * <p>
+ * һredisʧthreshold(ʧ֮䲻probeInterval)۶,
+ * ֮redisĲ׳ShardUnavailableException,ٵȴӳصmaxWaitsocketʱ,
+ * sessionֻڱضд.̨߳ÿprobeIntervalһPINGһ,ɹر۶,
+ * RedisManager۶ڼûдredissessionд.
+ *
+ * @author wjw
+ */
+public class RedisCircuitBreaker {
+	private final Log log = LogFactory.getLog(RedisCircuitBreaker.class);
+
+	private final int _threshold;
+	private final long _probeInterval;
+	//redis(host:port)->״̬
+	private final ConcurrentHashMap<String, ShardState> _states = new ConcurrentHashMap<String, ShardState>();
+
+	private final AtomicLong _trips = new AtomicLong();
+
+	public RedisCircuitBreaker(List<JedisShardInfo> shards, int threshold, long probeInterval) {
+		this._threshold = threshold;
+		this._probeInterval = probeInterval;
+		for (JedisShardInfo shardInfo : shards) {
+			_states.put(shardName(shardInfo), new ShardState(shardInfo));
+		}
+	}
+
+	static String shardName(JedisShardInfo shardInfo) {
+		return shardInfo.getHost() + ":" + shardInfo.getPort();
+	}
+
+	boolean isOpen(String shard) {
+		ShardState state = _states.get(shard);
+		return state != null && state.open;
+	}
+
+	/**
+	 * ¼һʧ,ʧܴﵽthresholdʱ۶
+	 */
+	void failure(String shard) {
+		ShardState state = _states.get(shard);
+		if (state == null) {
+			return;
+		}
+		synchronized (state) {
+			long now = System.currentTimeMillis();
+			if (now - state.lastFailure > _probeInterval) { //һʧ̫,¼
+				state.failures = 0;
+			}
+			state.lastFailure = now;
+			state.failures++;
+			if (!state.open && state.failures >= _threshold) {
+				state.open = true;
+				state.nextProbe = now + _probeInterval;
+				_trips.incrementAndGet();
+				log.warn("redis unavailable, circuit breaker opened:" + shard + ",failures:" + state.failures);
+			}
+		}
+	}
+
+	/**
+	 * ¼һγɹķ,ʧܵļ
+	 */
+	void success(String shard) {
+		ShardState state = _states.get(shard);
+		if (state == null || state.failures == 0) { //󲿷ַʲü
+			return;
+		}
+		synchronized (state) {
+			state.failures = 0;
+		}
+	}
+
+	/**
+	 * RedisManager.backgroundProcess(),PINGʱġ۶ϵredis.
+	 *
+	 * @return λָredis
+	 */
+	List<String> probe() {
+		List<String> recovered = new ArrayList<String>();
+		long now = System.currentTimeMillis();
+		for (java.util.Map.Entry<String, ShardState> entry : _states.entrySet()) {
+			ShardState state = entry.getValue();
+			if (!state.open || state.nextProbe > now) {
+				continue;
+			}
+			if (ping(state.shardInfo)) {
+				synchronized (state) {
+					state.open = false;
+					state.failures = 0;
+				}
+				recovered.add(entry.getKey());
+				log.warn("redis recovered, circuit breaker closed:" + entry.getKey());
+			} else {
+				state.nextProbe = System.currentTimeMillis() + _probeInterval;
+			}
+		}
+		return recovered;
+	}
+
+	private boolean ping(JedisShardInfo shardInfo) {
+		Jedis jedis = new Jedis(shardInfo); //ӳ,ӳؿѾռ
+		try {
+			jedis.connect(); //ʱconnect()AUTH
+			return "PONG".equals(jedis.ping());
+		} catch (Exception ex) {
+			return false;
+		} finally {
+			try {
+				jedis.disconnect();
+			} catch (Throwable thex) {
+			}
+		}
+	}
+
+	/**
+	 * ۶ϵredis,ŷָ
+	 */
+	public String getOpenShards() {
+		StringBuilder sb = new StringBuilder();
+		for (java.util.Map.Entry<String, ShardState> entry : _states.entrySet()) {
+			if (entry.getValue().open) {
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append(entry.getKey());
+			}
+		}
+		return sb.toString();
+	}
+
+	public long getTrips() {
+		return _trips.get();
+	}
+
+	private static final class ShardState {
+		final JedisShardInfo shardInfo;
+		volatile boolean open = false;
+		volatile long nextProbe = 0;
+		volatile int failures = 0;
+		long lastFailure = 0;
+
+		ShardState(JedisShardInfo shardInfo) {
+			this.shardInfo = shardInfo;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.apache.catalina.session.ext;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * redisִеluaű(Ҫredis 2.6).
+ * <p>
+ * EVALSHAִ,ûлű(NOSCRIPT)ʱEVALִһ,EVAL֮˾ͻ.
+ * ֱClient,BinaryJedis.eval(),ΪӵĳʱΪ޶Ҳָ.
+ *
+ * @author wjw
+ */
+public class RedisLuaScript {
+	private final byte[] _script;
+	private final byte[] _sha1;
+
+	public RedisLuaScript(String script) {
+		this._script = SafeEncoder.encode(script);
+		this._sha1 = SafeEncoder.encode(sha1Hex(_script));
+	}
+
+	/**
+	 * @param keyCount
+	 *          paramsǰkeyCountKEYS,ARGV
+	 */
+	public Object eval(Jedis jedis, int keyCount, byte[]... params) {
+		Client client = jedis.getClient();
+		byte[] bytesKeyCount = Protocol.toByteArray(keyCount);
+		client.evalsha(_sha1, bytesKeyCount, params);
+		try {
+			return client.getOne();
+		} catch (JedisDataException ex) {
+			if (ex.getMessage() == null || !ex.getMessage().startsWith("NOSCRIPT")) {
+				throw ex;
+			}
+		}
+
+		client.eval(_script, bytesKeyCount, params);
+		return client.getOne();
+	}
+
+	private static String sha1Hex(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -1,27 +1,32 @@
 package org.apache.catalina.session.ext;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Session;
 import org.apache.catalina.session.StandardManager;
 import org.apache.catalina.session.StandardSession;
-import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
-import org.wjw.kryo.wrapper.KryoSerializer;
+import org.apache.tomcat.util.ExceptionUtils;
 
+import redis.clients.jedis.BulkArgument;
+import redis.clients.jedis.BulkReplyReader;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.PipelineBlock;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.ShardedJedis;
 import redis.clients.jedis.ShardedJedisPool;
 import redis.clients.jedis.TransactionBlock;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * 
@@ -31,8 +36,38 @@ public class RedisManager extends StandardManager {
 	private final Log log = LogFactory.getLog(RedisManager.class);
 
 	static final String TOMCAT_SESSION_PREFIX = "TS:";
-	static ShardedJedisPool _shardedPool = null;
-	static JedisPool _pool = null;
+	//ǰİ汾дĴʱ,SessionMetadata.FIELD,ֻڶȡʱ
+	static final String CREATION_TIME_FIELD = "__[creationTime]__";
+
+	/**
+	 * дsessionԪݲˢ¹ʱ,һ.
+	 * KEYS[1]=session key,KEYS[2]=Էֿkey,KEYS[3]=԰汾ŵkey,ARGV[1]=maxInactiveInterval,ARGV[2]=Ԫݵfield,ARGV[3]=Ԫ.
+	 * 򿪹ʱKEYS[4]=,ARGV[4]=sessionId,ARGV[5]=ڵʱ.
+	 * 1ʾԪѴ,0ʾ½.
+	 */
+	static final RedisLuaScript TOUCH_SCRIPT = new RedisLuaScript(""
+	    + "if #KEYS > 3 then\n"
+	    + "  if tonumber(ARGV[1]) > 0 then redis.call('ZADD', KEYS[4], ARGV[5], ARGV[4])\n"
+	    + "  else redis.call('ZREM', KEYS[4], ARGV[4]) end\n"
+	    + "end\n"
+	    + "local created = redis.call('HSET', KEYS[1], ARGV[2], ARGV[3])\n"
+	    + "if tonumber(ARGV[1]) > 0 then\n"
+	    + "  redis.call('EXPIRE', KEYS[1], ARGV[1])\n"
+	    + "  redis.call('EXPIRE', KEYS[2], ARGV[1])\n"
+	    + "  redis.call('EXPIRE', KEYS[3], ARGV[1])\n"
+	    + "else\n"
+	    + "  redis.call('PERSIST', KEYS[1])\n"
+	    + "  redis.call('PERSIST', KEYS[2])\n"
+	    + "  redis.call('PERSIST', KEYS[3])\n"
+	    + "end\n"
+	    + "return 1 - created\n");
+
+	//redisǷ֧luaű(2.6),֧ʱ˻صpipelineķʽ
+	volatile boolean scriptingSupported = true;
+	//RedisPoolRegistryȡõӳ,ͬRedisManager
+	private volatile RedisPoolRegistry.PoolEntry _poolEntry = null;
+	ShardedJedisPool _shardedPool = null;
+	JedisPool _pool = null;
 	//->-------------------------------------
 	boolean debugEnabled = false;
 	private String debug = "false"; //Ƿ򿪵ģʽ
@@ -162,496 +197,2377 @@ public class RedisManager extends StandardManager {
 		this.socketTO = socketTO;
 	}
 
-	//<--------------------------------------
+	boolean writeBehindEnabled = false;
+	private String writeBehind = "false"; //Ƿдģʽ(޸ʱдredis)
 
-	public RedisManager() {
-		super();
+	/**
+	 * Ƿдģʽ
+	 * 
+	 * @return the writeBehind
+	 */
+	public String getWriteBehind() {
+		return writeBehind;
 	}
 
 	/**
-	 * Return the active Session, associated with this Manager, with the specified
-	 * session id (if any); otherwise return <code>null</code>.
+	 * Ƿдģʽ.򿪺,ڼsessionԵ޸ȼ¼ڱ,
+	 * RedisSessionValveʱһpipelineдredis.
 	 * 
-	 * @param id
-	 *          The session id for the session to be returned
-	 * 
-	 * @exception IllegalStateException
-	 *              if a new session cannot be instantiated for any reason
-	 * @exception IOException
-	 *              if an input/output error occurs while processing this request
+	 * @param writeBehind
+	 *          the writeBehind to set
 	 */
-	@Override
-	public Session findSession(String id) throws IOException {
-		Session session = super.findSession(id);
-		if (!this.isStarted()) {
-			return session;
-		}
-		if (session == null && id != null) { //˵sessionпһڵ
-			try {
-				boolean idExists = jedisExists(TOMCAT_SESSION_PREFIX + id);
-				if (idExists) { //RedisSession ID
-					if (this.debugEnabled) {
-						log.info("cached found and local not! id=" + id);
-					}
-
-					//->
-					RedisSession redisSession = new RedisSession(this);
-					redisSession.setNew(false);
-					redisSession.setValid(true);
-					redisSession.setCreationTime(System.currentTimeMillis());
-					redisSession.setMaxInactiveInterval(this.maxInactiveInterval);
-					redisSession.setCachedId(id);
-
-					this.add(redisSession);
-					sessionCounter++;
+	public void setWriteBehind(String writeBehind) {
+		this.writeBehind = writeBehind;
+	}
 
-					return redisSession;
-					//<-
-				}
-			} catch (Exception ex) {
-				log.error("error:", ex);
-			}
-		}
+	boolean nearCacheEnabled = false;
+	private String nearCache = "false"; //ճģʽǷ򿪱Ի
 
-		return session;
+	/**
+	 * ճģʽǷ򿪱Ի
+	 * 
+	 * @return the nearCache
+	 */
+	public String getNearCache() {
+		return nearCache;
 	}
 
 	/**
-	 * Construct and return a new session object, based on the default settings
-	 * specified by this Manager's properties. The session id will be assigned by
-	 * this method, and available via the getId() method of the returned session.
-	 * If a new session cannot be created for any reason, return <code>null</code>
-	 * .
+	 * ճģʽǷ򿪱Ի.򿪺лֵڱ,
+	 * ڵͨredispub/sub֪ͨʧЧ.
 	 * 
-	 * @exception IllegalStateException
-	 *              if a new session cannot be instantiated for any reason
+	 * @param nearCache
+	 *          the nearCache to set
 	 */
-	@Override
-	public Session createSession(String sessionId) {
-		Session session = super.createSession(sessionId);
-		if (!this.isStarted()) {
-			return session;
-		}
+	public void setNearCache(String nearCache) {
+		this.nearCache = nearCache;
+	}
 
-		sessionId = session.getId();
-		if (this.debugEnabled) {
-			log.info("id=" + sessionId);
-		}
+	float expireRefreshRatioValue = 0f;
+	private String expireRefreshRatio = "0"; //ϴˢ¹ʱ䲻maxInactiveIntervalʱ,ٷEXPIRE
 
-		return session;
+	/**
+	 * ˢsessionʱĽ
+	 * 
+	 * @return the expireRefreshRatio
+	 */
+	public String getExpireRefreshRatio() {
+		return expireRefreshRatio;
 	}
 
 	/**
-	 * ӱcreateSession().
+	 * ˢsessionʱĽ,ȡֵ[0,1).0ʾÿaccess()EXPIRE;
+	 * 0.1ʾڵϴˢ²maxInactiveInterval10%ʱEXPIRE.
+	 * redisĹʱӦӳmaxInactiveInterval+*maxInactiveInterval,keyȱصĿгʱȹ,
+	 * sessionredisౣ*maxInactiveInterval.
+	 * 
+	 * @param expireRefreshRatio
+	 *          the expireRefreshRatio to set
 	 */
-	@Override
-	protected StandardSession getNewSession() {
-		RedisSession session = new RedisSession(this);
-		//    if (this.debugEnabled) {
-		//      log.info("id=" + session.getId());
-		//    }
+	public void setExpireRefreshRatio(String expireRefreshRatio) {
+		this.expireRefreshRatio = expireRefreshRatio;
+	}
 
-		return session;
+	private String asyncPersist = "false"; //Ƿں̨߳첽session޸дredis
+
+	/**
+	 * Ƿ첽дredis
+	 * 
+	 * @return the asyncPersist
+	 */
+	public String getAsyncPersist() {
+		return asyncPersist;
 	}
 
 	/**
-	 * Remove this Session from the active Sessions for this Manager, and from the
-	 * Redis.
+	 * Ƿ첽дredis.򿪺ֱ̲߳дredis,޸ĵsessionŽн,
+	 * asyncThreads̨̺߳ϲд.
 	 * 
-	 * @param session
-	 *          Session to be removed
+	 * @param asyncPersist
+	 *          the asyncPersist to set
 	 */
-	@Override
-	public void remove(Session session) {
-		if (this.debugEnabled) {
-			log.info("id=" + session.getId());
-		}
-		super.remove(session);
-		if (!this.isStarted()) {
-			return;
-		}
+	public void setAsyncPersist(String asyncPersist) {
+		this.asyncPersist = asyncPersist;
+	}
 
-		try {
-			jedisDel(TOMCAT_SESSION_PREFIX + session.getId());
-		} catch (Exception ex) {
-			log.error("error:", ex);
-		}
+	private String asyncThreads = "2";
+
+	/**
+	 * 첽дredisĺ̨߳
+	 */
+	public String getAsyncThreads() {
+		return asyncThreads;
 	}
 
-	public boolean isStarted() {
-		return (super.getState() == LifecycleState.STARTED);
+	/**
+	 * 첽дredisĺ̨߳
+	 */
+	public void setAsyncThreads(String asyncThreads) {
+		this.asyncThreads = asyncThreads;
 	}
 
-	@Override
-	protected void startInternal() throws LifecycleException {
-		super.startInternal();
+	private String asyncQueueSize = "10000";
 
-		debugEnabled = Boolean.parseBoolean(debug);
-		stickySessionEnabled = Boolean.parseBoolean(stickySession);
+	/**
+	 * 첽де󳤶
+	 */
+	public String getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
 
-		synchronized (RedisManager.class) {
-			try {
-				if (_shardedPool == null && _pool == null) {
-					try {
-						JedisPoolConfig poolConfig = new JedisPoolConfig();
-						poolConfig.setMaxActive(Integer.valueOf(maxConn));
-						poolConfig.setMinIdle(Integer.valueOf(minConn));
-						int maxIdle = poolConfig.minIdle + 5;
-						if (maxIdle > poolConfig.maxActive) {
-							maxIdle = poolConfig.maxActive;
-						}
-						poolConfig.setMaxIdle(maxIdle);
-						poolConfig.setMaxWait(1000L);
-						poolConfig.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
-						poolConfig.setTestOnBorrow(false);
-						poolConfig.setTestOnReturn(false);
-						poolConfig.setTestWhileIdle(true);
-						poolConfig.setMinEvictableIdleTimeMillis(1000L * 60L * 10L); //ж,ж೤ʱᱻ
-						poolConfig.setTimeBetweenEvictionRunsMillis(1000L * 30L); //߳30ִһ
-						poolConfig.setNumTestsPerEvictionRun(-1); //-1,ʾִ߳ʱ,еĿж
-
-						String[] servers = serverlist.split(",");
-						java.util.List<JedisShardInfo> shards = new java.util.ArrayList<JedisShardInfo>(servers.length);
-						for (int i = 0; i < servers.length; i++) {
-							String[] hostAndPort = servers[i].split(":");
-							JedisShardInfo shardInfo = new JedisShardInfo(hostAndPort[0], Integer.parseInt(hostAndPort[1]), Integer.valueOf(socketTO));
-							if (hostAndPort.length == 3) {
-								shardInfo.setPassword(hostAndPort[2]);
-							}
-							shards.add(shardInfo);
-						}
+	/**
+	 * 첽де󳤶
+	 */
+	public void setAsyncQueueSize(String asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
 
-						if (shards.size() == 1) {
-							_pool = new JedisPool(poolConfig, shards.get(0).getHost(), shards.get(0).getPort(), shards.get(0).getTimeout(), shards.get(0).getPassword());
-							log.info("ʹ:JedisPool");
-						} else {
-							_shardedPool = new ShardedJedisPool(poolConfig, shards);
-							log.info("ʹ:ShardedJedisPool");
-						}
+	private String asyncBackpressure = SessionPersistExecutor.POLICY_SYNC;
 
-						log.info("RedisShards:" + shards.toString());
-						log.info("ʼRedisManager:" + this.toString());
-					} catch (Exception ex) {
-						log.error("error:", ex);
-					}
-				}
+	/**
+	 * 첽дʱĴ
+	 */
+	public String getAsyncBackpressure() {
+		return asyncBackpressure;
+	}
 
-			} catch (Exception ex) {
-				log.error("error:", ex);
-			}
-		}
+	/**
+	 * 첽дʱĴ:block(ȴ),dropOldest(ϵһ,޸´д),sync(߳ͬд)
+	 */
+	public void setAsyncBackpressure(String asyncBackpressure) {
+		this.asyncBackpressure = asyncBackpressure;
 	}
 
-	@Override
-	protected void stopInternal() throws LifecycleException {
-		try {
-			synchronized (RedisManager.class) {
-				if (_shardedPool != null) {
-					ShardedJedisPool myPool = _shardedPool;
-					_shardedPool = null;
-					try {
-						myPool.destroy();
-						log.info("RedisManager:" + this.toString());
-					} catch (Exception ex) {
-						log.error("error:", ex);
-					}
+	private String maxLocalSessions = "0";
 
-				}
+	/**
+	 * ౣsession,0ʾ
+	 */
+	public String getMaxLocalSessions() {
+		return maxLocalSessions;
+	}
 
-				if (_pool != null) {
-					JedisPool myPool = _pool;
-					_pool = null;
-					try {
-						myPool.destroy();
-						log.info("RedisManager:" + this.toString());
-					} catch (Exception ex) {
-						log.error("error:", ex);
-					}
+	/**
+	 * ౣsession,ʱûзʵsessionӱƳ(redis),0ʾ
+	 */
+	public void setMaxLocalSessions(String maxLocalSessions) {
+		this.maxLocalSessions = maxLocalSessions;
+	}
 
-				}
-			}
-		} finally {
-			super.stopInternal();
-		}
+	private String maxLocalSessionBytes = "0";
+
+	/**
+	 * session(лĴС)ռõֽ,0ʾ
+	 */
+	public String getMaxLocalSessionBytes() {
+		return maxLocalSessionBytes;
 	}
 
-	@Override
-	public String toString() {
-		return "RedisManager{" + "stickySession=" + stickySession + ",debug=" + debug + ",serverlist=" + serverlist
-		    + ",minConn=" + minConn + ",maxConn=" + maxConn + ",socketTO=" + socketTO + '}';
+	/**
+	 * session(лĴС)ռõֽ,0ʾ
+	 */
+	public void setMaxLocalSessionBytes(String maxLocalSessionBytes) {
+		this.maxLocalSessionBytes = maxLocalSessionBytes;
 	}
 
-	byte[] serialize(Object obj) throws IOException {
-		return KryoSerializer.write(obj);
+	private String passivateMinIdle = "60";
+
+	/**
+	 * sessionٿжſԴӱƳ
+	 */
+	public String getPassivateMinIdle() {
+		return passivateMinIdle;
 	}
 
-	Object deserialize(byte[] bb) throws IOException, ClassNotFoundException {
-		return KryoSerializer.read(bb);
+	/**
+	 * sessionٿжſԴӱƳ
+	 */
+	public void setPassivateMinIdle(String passivateMinIdle) {
+		this.passivateMinIdle = passivateMinIdle;
 	}
 
-	//TODO@Redis
-	public Boolean jedisExists(String key) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.exists(key);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				return jedis.exists(key);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
+	private String heapPressureThreshold = "0";
+
+	/**
+	 * GCʹʳʱƳһֿеısession,0ʾ
+	 */
+	public String getHeapPressureThreshold() {
+		return heapPressureThreshold;
 	}
 
-	Long jedisExpire(String key, int seconds) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.expire(key, seconds);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				return jedis.expire(key, seconds);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
+	/**
+	 * GCʹʳ(01֮)ʱƳһֿеısession,0ʾ
+	 */
+	public void setHeapPressureThreshold(String heapPressureThreshold) {
+		this.heapPressureThreshold = heapPressureThreshold;
 	}
 
-	java.util.List<Object> jedisMulti(String key, TransactionBlock jedisTransaction) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.multi(jedisTransaction);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				byte[] bytesKey = key.getBytes(Protocol.CHARSET);
-				Jedis jedisA = jedis.getShard(bytesKey);
-				return jedisA.multi(jedisTransaction);
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
+	private String negativeCacheTTL = "0";
 
+	/**
+	 * redisﲻڵsessionIdڱؼסٺ,0ʾ
+	 */
+	public String getNegativeCacheTTL() {
+		return negativeCacheTTL;
 	}
 
-	java.util.List<Object> jedisPipelined(String key, PipelineBlock pipelineBlock) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.pipelined(pipelineBlock);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				byte[] bytesKey = key.getBytes(Protocol.CHARSET);
-				Jedis jedisA = jedis.getShard(bytesKey);
-				return jedisA.pipelined(pipelineBlock);
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
-
+	/**
+	 * redisﲻڵsessionIdڱؼסٺ,ʱͬһidٲredis,0ʾ.
+	 * ճģʽڵմsessionʱڱڵҲ,Ӧúܶ(缸ٺ뵽)
+	 */
+	public void setNegativeCacheTTL(String negativeCacheTTL) {
+		this.negativeCacheTTL = negativeCacheTTL;
 	}
 
-	byte[] jedisHget(String hkey, String field) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.hget(hkey.getBytes(Protocol.CHARSET), field.getBytes(Protocol.CHARSET));
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				return jedis.hget(hkey.getBytes(Protocol.CHARSET), field.getBytes(Protocol.CHARSET));
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
+	private String negativeCacheSize = "10000";
+
+	/**
+	 * סٸڵsessionId
+	 */
+	public String getNegativeCacheSize() {
+		return negativeCacheSize;
 	}
 
-	public Long jedisHset(String hkey, String field, byte[] value) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.hset(hkey.getBytes(Protocol.CHARSET), field.getBytes(Protocol.CHARSET), value);
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				return jedis.hset(hkey.getBytes(Protocol.CHARSET), field.getBytes(Protocol.CHARSET), value);
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
-				}
-			}
-		}
+	/**
+	 * סٸڵsessionId
+	 */
+	public void setNegativeCacheSize(String negativeCacheSize) {
+		this.negativeCacheSize = negativeCacheSize;
 	}
 
-	public Long jedisHdel(String hkey, String field) {
-		if (_pool != null) {
-			Jedis jedis = null;
-			try {
-				jedis = _pool.getResource();
-				return jedis.hdel(hkey, field);
-			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
+	private String expiryIndex = "false";
+
+	/**
+	 * ǷredisάsessionĹ
+	 */
+	public String getExpiryIndex() {
+		return expiryIndex;
+	}
+
+	/**
+	 * ǷredisάsessionĹ.򿪺ֻ̨߳鵽ڵsession,ÿαеısession
+	 */
+	public void setExpiryIndex(String expiryIndex) {
+		this.expiryIndex = expiryIndex;
+	}
+
+	private String expiryIndexBatch = "1000";
+
+	/**
+	 * ÿδӹȡ
+	 */
+	public String getExpiryIndexBatch() {
+		return expiryIndexBatch;
+	}
+
+	/**
+	 * ÿδӹȡ
+	 */
+	public void setExpiryIndexBatch(String expiryIndexBatch) {
+		this.expiryIndexBatch = expiryIndexBatch;
+	}
+
+	private String expiryFullScanFrequency = "10";
+
+	/**
+	 * 򿪹ʱ,ÿٴιڼһȫsessionɨ
+	 */
+	public String getExpiryFullScanFrequency() {
+		return expiryFullScanFrequency;
+	}
+
+	/**
+	 * 򿪹ʱ,ÿٴιڼһȫsessionɨ,©session,0ʾɨ
+	 */
+	public void setExpiryFullScanFrequency(String expiryFullScanFrequency) {
+		this.expiryFullScanFrequency = expiryFullScanFrequency;
+	}
+
+	private String compression = "none";
+
+	/**
+	 * ֵлѹ㷨
+	 */
+	public String getCompression() {
+		return compression;
+	}
+
+	/**
+	 * ֵлѹ㷨:none(ѹ),deflate.޸ĺǰдȻԶȡ
+	 */
+	public void setCompression(String compression) {
+		this.compression = compression;
+	}
+
+	private String compressionThreshold = "4096";
+
+	/**
+	 * лСڶֽڵֵѹ
+	 */
+	public String getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * лСڶֽڵֵѹ
+	 */
+	public void setCompressionThreshold(String compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	private String serializer = KryoSessionSerializer.NAME;
+
+	/**
+	 * ֵлʽ
+	 */
+	public String getSerializer() {
+		return serializer;
+	}
+
+	/**
+	 * ֵлʽ:kryo,java,ʵSessionSerializerӿڵȫ
+	 */
+	public void setSerializer(String serializer) {
+		this.serializer = serializer;
+	}
+
+	private String classRegistry = "false";
+
+	/**
+	 * Ƿredisﱣнڵ㹲õ
+	 */
+	public String getClassRegistry() {
+		return classRegistry;
+	}
+
+	/**
+	 * Ƿredisﱣнڵ㹲õ,Kryoлʱö̵Ŵȫ.ֻkryoлʽЧ,
+	 * 򿪺дûд򿪵Ľڵ,нڵҪͬʱ
+	 */
+	public void setClassRegistry(String classRegistry) {
+		this.classRegistry = classRegistry;
+	}
+
+	private String circuitBreakerThreshold = "0";
+
+	/**
+	 * һredisʧܶٴκ۶
+	 */
+	public String getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	/**
+	 * һredisʧܶٴκ۶,۶ڼredisϵsessionֻд,ٵȴӺsocketʱ,0ʾ۶
+	 */
+	public void setCircuitBreakerThreshold(String circuitBreakerThreshold) {
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	private String circuitBreakerProbeInterval = "5000";
+
+	/**
+	 * ۶ϺÿٺһredisǷָ
+	 */
+	public String getCircuitBreakerProbeInterval() {
+		return circuitBreakerProbeInterval;
+	}
+
+	/**
+	 * ۶ϺÿٺһredisǷָ,ںִ̨߳,ʵʼСbackgroundProcessorDelay
+	 */
+	public void setCircuitBreakerProbeInterval(String circuitBreakerProbeInterval) {
+		this.circuitBreakerProbeInterval = circuitBreakerProbeInterval;
+	}
+
+	private String chunkSize = "0";
+
+	/**
+	 * Էֿ鱣ʱÿֽ
+	 */
+	public String getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * л(ѹ)󳬹ֽڵֵֿ鱣,ÿô,һredisᴫֵܴredis.0ʾֿ
+	 */
+	public void setChunkSize(String chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	private String chunkFetchBatch = "16";
+
+	/**
+	 * ȡֿ鱣ʱһpipelineȡضٿ
+	 */
+	public String getChunkFetchBatch() {
+		return chunkFetchBatch;
+	}
+
+	/**
+	 * ȡֿ鱣ʱһpipelineȡضٿ
+	 */
+	public void setChunkFetchBatch(String chunkFetchBatch) {
+		this.chunkFetchBatch = chunkFetchBatch;
+	}
+
+	private String deltaSync = "false";
+
+	/**
+	 * ճģʽǷ񰴰汾ͬ
+	 */
+	public String getDeltaSync() {
+		return deltaSync;
+	}
+
+	/**
+	 * ճģʽǷ񰴰汾ͬ:ÿֻһredisЩԱĽڵ,ֻȡЩ,Դӱضȡ.
+	 * нڵҪͬʱ,ûд򿪵ĽڵдʱӰ汾
+	 */
+	public void setDeltaSync(String deltaSync) {
+		this.deltaSync = deltaSync;
+	}
+
+	private String prefetch = "false";
+
+	/**
+	 * ǷHostʱͿʼredisԤsession
+	 */
+	public String getPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * ǷHostʱͿʼredisԤsession:ڶ߳ȡ,ִ֤߳Filterͬʱ,
+	 * findSession()ʱֱȡöȡĽ
+	 */
+	public void setPrefetch(String prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	private String prefetchThreads = "4";
+
+	/**
+	 * Ԥsession߳
+	 */
+	public String getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	/**
+	 * Ԥsession߳,̶߳æҵȴԤﵽprefetchThreads*16ʱԤ
+	 */
+	public void setPrefetchThreads(String prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	private String replicatedAttributes = "";
+
+	/**
+	 * Ƶredis
+	 */
+	public String getReplicatedAttributes() {
+		return replicatedAttributes;
+	}
+
+	/**
+	 * Ƶredis,ŷָ"ǰ׺*"ߴ*,ΪʱвlocalAttributes
+	 */
+	public void setReplicatedAttributes(String replicatedAttributes) {
+		this.replicatedAttributes = replicatedAttributes;
+	}
+
+	private String localAttributes = "javax.zkoss.zk.ui.Session*";
+
+	/**
+	 * ֻڱص
+	 */
+	public String getLocalAttributes() {
+		return localAttributes;
+	}
+
+	/**
+	 * ֻڱص,ŷָ"ǰ׺*"ߴ*.ЩԲᱻл,Ҳдredis
+	 */
+	public void setLocalAttributes(String localAttributes) {
+		this.localAttributes = localAttributes;
+	}
+
+	private String telemetrySampleRate = "0";
+
+	/**
+	 * ÿٴsetAttribute()һԵĴСлʱ
+	 */
+	public String getTelemetrySampleRate() {
+		return telemetrySampleRate;
+	}
+
+	/**
+	 * ÿ߳ÿٴsetAttribute()һԵĴСлʱ,ͳƽעJMX MBean
+	 * (Catalina:type=RedisSessionTelemetry,host=...,context=...),0ʾͳ
+	 */
+	public void setTelemetrySampleRate(String telemetrySampleRate) {
+		this.telemetrySampleRate = telemetrySampleRate;
+	}
+
+	private String telemetryTopN = "20";
+
+	/**
+	 * ͳгĶٸԺsession
+	 */
+	public String getTelemetryTopN() {
+		return telemetryTopN;
+	}
+
+	/**
+	 * ͳгĶٸԺsession
+	 */
+	public void setTelemetryTopN(String telemetryTopN) {
+		this.telemetryTopN = telemetryTopN;
+	}
+
+	private String drainTimeout = "10000";
+
+	/**
+	 * ֹͣʱѱsessionдredisöٺ
+	 */
+	public String getDrainTimeout() {
+		return drainTimeout;
+	}
+
+	/**
+	 * ֹͣʱбsession״̬дredisöٺ,ÿredisһ̡߳ôpipelineд,
+	 * ʱĽڵԽʹЩsession;ʱStandardManagerJavaлдļ.0ʾд
+	 */
+	public void setDrainTimeout(String drainTimeout) {
+		this.drainTimeout = drainTimeout;
+	}
+
+	//<--------------------------------------
+
+	/**
+	 * ǰ߳δдredis޸ĵsession,ֻRedisSessionValveڼ䲻Ϊnull
+	 */
+	private final ThreadLocal<java.util.Set<RedisSession>> _requestDirtySessions = new ThreadLocal<java.util.Set<RedisSession>>();
+	private RedisSessionValve _valve = null;
+	private SessionPrefetcher _prefetcher = null;
+	//ֹͣʱѾsessionдredis
+	private volatile boolean _drained = false;
+	java.util.List<JedisShardInfo> _shards = null;
+	private final java.util.concurrent.atomic.AtomicLong _expireRefreshSent = new java.util.concurrent.atomic.AtomicLong();
+	private final java.util.concurrent.atomic.AtomicLong _expireRefreshSuppressed = new java.util.concurrent.atomic.AtomicLong();
+	SessionNearCache _nearCache = null;
+	SessionPersistExecutor _persistExecutor = null;
+	private SessionPassivator _passivator = null;
+	private SessionNegativeCache _negativeCache = null;
+	SessionExpiryIndex _expiryIndex = null;
+	private SessionCompression _compression = null;
+	volatile SessionChunks _chunks = null;
+	volatile SessionVersions _versions = null;
+	volatile SessionTelemetry _telemetry = null;
+	private javax.management.ObjectName _telemetryName = null;
+	private volatile SessionAttributeFilter _attributeFilter = new SessionAttributeFilter(replicatedAttributes, localAttributes);
+	private volatile SessionSerializer _serializer = new KryoSessionSerializer();
+	private SessionClassRegistry _classRegistry = null;
+	private int _expiryFullScanFrequencyValue = 0;
+	private int _expiryChecks = 0;
+	volatile RedisCircuitBreaker _breaker = null;
+	//keyredis,ShardedJedis㷨ͬ,ֻڶredisʱʹ
+	private redis.clients.util.Sharded<Jedis, JedisShardInfo> _shardLocator = null;
+	//дredisʧܡȴдsession:id->session
+	private final java.util.concurrent.ConcurrentHashMap<String, RedisSession> _resyncSessions = new java.util.concurrent.ConcurrentHashMap<String, RedisSession>();
+
+	public RedisManager() {
+		super();
+	}
+
+	/**
+	 * Return the active Session, associated with this Manager, with the specified
+	 * session id (if any); otherwise return <code>null</code>.
+	 * 
+	 * @param id
+	 *          The session id for the session to be returned
+	 * 
+	 * @exception IllegalStateException
+	 *              if a new session cannot be instantiated for any reason
+	 * @exception IOException
+	 *              if an input/output error occurs while processing this request
+	 */
+	@Override
+	public Session findSession(String id) throws IOException {
+		Session session = super.findSession(id);
+		if (!this.isStarted()) {
+			return session;
+		}
+		if (session == null && id != null) { //˵sessionпһڵ
+			SessionNegativeCache negativeCache = _negativeCache;
+			if (negativeCache != null && negativeCache.isAbsent(id)) { //ոȷϹredisû
+				return null;
+			}
+			try {
+				SessionPrefetcher prefetcher = _prefetcher;
+				java.util.concurrent.Future<RedisSession> prefetched = (prefetcher == null) ? null : prefetcher.take(id);
+				RedisSession redisSession = (prefetched != null && awaitPrefetch(id, prefetched)) ? prefetched.get() : loadSession(id);
+				if (redisSession != null) { //RedisSession ID
+					Session added = super.findSession(id); //ȴԤڼѾ
+					if (added != null) {
+						return added;
+					}
+					if (stickySessionEnabled) {
+						redisSession.activate(); //֮ǰpassivate()Ƴ
+					}
+
+					this.add(redisSession);
+					sessionCounter++;
+
+					return redisSession;
+				} else if (negativeCache != null) {
+					negativeCache.putAbsent(id);
+				}
+			} catch (Exception ex) {
+				log.error("error:", ex);
+			}
+		}
+
+		return session;
+	}
+
+	/**
+	 * redisȡsession,ӵ.findSession()SessionPrefetcher̵߳.
+	 * 
+	 * @return redisûsessionʱnull
+	 */
+	RedisSession loadSession(String id) {
+		//ճģʽһHGETALLsessionȡ,֮ÿԶҪHGETһ
+		java.util.Map<byte[], byte[]> hash = null;
+		SessionMetadata metadata = null;
+		boolean idExists;
+		if (stickySessionEnabled) {
+			hash = jedisHgetAll(TOMCAT_SESSION_PREFIX + id);
+			idExists = (hash != null && !hash.isEmpty());
+		} else { //ԪݺEXISTSͬһȡ
+			final byte[] bytesKey = SafeEncoder.encode(TOMCAT_SESSION_PREFIX + id);
+			java.util.List<Object> results = jedisPipelined(TOMCAT_SESSION_PREFIX + id, new PipelineBlock() {
+				@Override
+				public void execute() {
+					hget(bytesKey, SessionMetadata.FIELD_BYTES);
+					exists(bytesKey);
+				}
+			});
+			metadata = SessionMetadata.decode((byte[]) results.get(0));
+			idExists = Boolean.TRUE.equals(results.get(1));
+		}
+		if (!idExists) {
+			return null;
+		}
+		if (this.debugEnabled) {
+			log.info("cached found and local not! id=" + id);
+		}
+
+		//->
+		RedisSession redisSession = new RedisSession(this);
+		redisSession.setNew(false);
+		redisSession.setValid(true);
+		redisSession.setCreationTime(System.currentTimeMillis());
+		redisSession.setMaxInactiveInterval(this.maxInactiveInterval);
+		redisSession.setCachedId(id);
+		if (hash != null) {
+			redisSession.loadAttributes(hash);
+		} else if (metadata != null) {
+			redisSession.loadMetadata(metadata);
+		}
+		return redisSession;
+		//<-
+	}
+
+	/**
+	 * SessionPrefetchValve:ûsessionʱʼԤ
+	 * 
+	 * @return ûпʼԤʱnull
+	 */
+	java.util.concurrent.Future<RedisSession> prefetch(String id) {
+		SessionPrefetcher prefetcher = _prefetcher;
+		if (prefetcher == null || !this.isStarted() || sessions.containsKey(id)) {
+			return null;
+		}
+		SessionNegativeCache negativeCache = _negativeCache;
+		if (negativeCache != null && negativeCache.isAbsent(id)) {
+			return null;
+		}
+		return prefetcher.prefetch(id);
+	}
+
+	void discardPrefetch(String id, java.util.concurrent.Future<RedisSession> future) {
+		SessionPrefetcher prefetcher = _prefetcher;
+		if (prefetcher != null) {
+			prefetcher.discard(id, future);
+		}
+	}
+
+	/**
+	 * ȴԤ,ȴsocketTO.Ԥڶûпʼʱȴ,ȡ߳Լȡ
+	 * 
+	 * @return ԤûпʼʱԤʧʱfalse,߳ٶһ
+	 */
+	private boolean awaitPrefetch(String id, java.util.concurrent.Future<RedisSession> future) {
+		if (SessionPrefetcher.cancelIfNotStarted(future)) {
+			return false;
+		}
+		try {
+			future.get(Integer.parseInt(socketTO), java.util.concurrent.TimeUnit.MILLISECONDS);
+			return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (Exception ex) {
+			if (this.debugEnabled) {
+				log.info("prefetch failed, id=" + id + ",error=" + ex);
+			}
+			future.cancel(false);
+			return false;
+		}
+	}
+
+	/**
+	 * Construct and return a new session object, based on the default settings
+	 * specified by this Manager's properties. The session id will be assigned by
+	 * this method, and available via the getId() method of the returned session.
+	 * If a new session cannot be created for any reason, return <code>null</code>
+	 * .
+	 * 
+	 * @exception IllegalStateException
+	 *              if a new session cannot be instantiated for any reason
+	 */
+	@Override
+	public Session createSession(String sessionId) {
+		Session session = super.createSession(sessionId);
+		if (!this.isStarted()) {
+			return session;
+		}
+
+		sessionId = session.getId();
+		if (this.debugEnabled) {
+			log.info("id=" + sessionId);
+		}
+
+		return session;
+	}
+
+	/**
+	 * ӱcreateSession().
+	 */
+	@Override
+	protected StandardSession getNewSession() {
+		RedisSession session = new RedisSession(this);
+		//    if (this.debugEnabled) {
+		//      log.info("id=" + session.getId());
+		//    }
+
+		return session;
+	}
+
+	/**
+	 * Remove this Session from the active Sessions for this Manager, and from the
+	 * Redis.
+	 * 
+	 * @param session
+	 *          Session to be removed
+	 */
+	@Override
+	public void remove(Session session) {
+		if (this.debugEnabled) {
+			log.info("id=" + session.getId());
+		}
+		super.remove(session);
+		if (!this.isStarted()) {
+			return;
+		}
+
+		if (_nearCache != null) {
+			_nearCache.invalidate(session.getId());
+		}
+		try {
+			jedisDel(TOMCAT_SESSION_PREFIX + session.getId());
+		} catch (Exception ex) {
+			log.error("error:", ex);
+		}
+	}
+
+	@Override
+	public void add(Session session) {
+		super.add(session);
+		SessionNegativeCache negativeCache = _negativeCache;
+		if (negativeCache != null) { //createSession()changeSessionId()ߵ
+			negativeCache.remove(session.getIdInternal());
+		}
+	}
+
+	/**
+	 * ֻӱƳsession,ɾredis,´ʱfindSession()¼.
+	 * 
+	 * @return ûдredis޸ʱfalse,sessionڱ
+	 */
+	boolean passivate(RedisSession session) {
+		session.markAttributesDirty(); //ճģʽ±صԶܱredis
+		session.flush();
+		if (session.isDirty()) { //дredisʧ
+			return false;
+		}
+		if (this.debugEnabled) {
+			log.info("id=" + session.getIdInternal());
+		}
+		if (stickySessionEnabled) { //findSession()activate()Ӧ:ճģʽ԰ȡ,¼ʱ֪ͨsessionDidActivate()
+			session.passivate();
+		}
+		super.remove(session);
+		if (_nearCache != null) {
+			_nearCache.invalidate(session.getIdInternal());
+		}
+		return true;
+	}
+
+	@Override
+	public void backgroundProcess() {
+		super.backgroundProcess();
+		SessionNegativeCache negativeCache = _negativeCache;
+		if (negativeCache != null) {
+			negativeCache.purge();
+		}
+		SessionPassivator passivator = _passivator;
+		if (passivator != null) {
+			try {
+				passivator.process();
+			} catch (Exception ex) {
+				log.error("error:", ex);
+			}
+		}
+		RedisCircuitBreaker breaker = _breaker;
+		if (breaker != null) {
+			breaker.probe();
+			resync(breaker);
+		}
+	}
+
+	/**
+	 * ۶ʱ,дredisʧܵsession,redisָresync()д
+	 * 
+	 * @return ûд۶ʱfalse
+	 */
+	boolean markResync(RedisSession session) {
+		if (_breaker == null) {
+			return false;
+		}
+		_resyncSessions.put(session.getIdInternal(), session);
+		return true;
+	}
+
+	/**
+	 * дredisʧܵsession۵޸дڵġѾõredis
+	 */
+	private void resync(RedisCircuitBreaker breaker) {
+		int count = 0;
+		for (java.util.Iterator<RedisSession> it = _resyncSessions.values().iterator(); it.hasNext();) {
+			RedisSession session = it.next();
+			if (breaker.isOpen(shardOf(RedisManager.TOMCAT_SESSION_PREFIX + session.getIdInternal()))) {
+				continue;
+			}
+			it.remove();
+			if (session.isValid()) {
+				persist(session); //ʧʱٴmarkResync()
+				count++;
+			}
+		}
+		if (count > 0) {
+			log.info("resync sessions:" + count);
+		}
+	}
+
+	/**
+	 * keyڵredis(host:port)
+	 */
+	String shardOf(String key) {
+		redis.clients.util.Sharded<Jedis, JedisShardInfo> shardLocator = _shardLocator;
+		JedisShardInfo shardInfo = (shardLocator == null) ? _shards.get(0) : shardLocator.getShardInfo(key);
+		return RedisCircuitBreaker.shardName(shardInfo);
+	}
+
+	/**
+	 * ۶ʱkeyڵredisǷ
+	 * 
+	 * @return keyڵredis,ûд۶ʱnull
+	 * @throws ShardUnavailableException
+	 *           keyڵredis۶
+	 */
+	private String checkShard(String key) {
+		RedisCircuitBreaker breaker = _breaker;
+		if (breaker == null) {
+			return null;
+		}
+		String shard = shardOf(key);
+		if (breaker.isOpen(shard)) {
+			throw new ShardUnavailableException(shard);
+		}
+		return shard;
+	}
+
+	private void shardFailed(String shard, JedisConnectionException ex) {
+		RedisCircuitBreaker breaker = _breaker;
+		if (breaker != null && shard != null && !(ex instanceof ShardUnavailableException)) {
+			breaker.failure(shard);
+		}
+	}
+
+	private void shardSucceeded(String shard) {
+		RedisCircuitBreaker breaker = _breaker;
+		if (breaker != null && shard != null) {
+			breaker.success(shard);
+		}
+	}
+
+	/**
+	 * getResource()ǷΪȴӳʱ(ӳغľ)ʧ,Ǵʱredis
+	 */
+	private static boolean isPoolExhausted(JedisConnectionException ex) {
+		return ex.getCause() instanceof java.util.NoSuchElementException;
+	}
+
+	/**
+	 * 򿪹ʱֻﵽڵġҲеsession,ÿexpiryFullScanFrequencyһȫɨ.
+	 */
+	@Override
+	public void processExpires() {
+		SessionExpiryIndex expiryIndex = _expiryIndex;
+		if (expiryIndex == null || !this.isStarted()) {
+			super.processExpires();
+			return;
+		}
+		if (_expiryFullScanFrequencyValue > 0 && ++_expiryChecks >= _expiryFullScanFrequencyValue) {
+			_expiryChecks = 0;
+			super.processExpires();
+		}
+
+		long timeNow = System.currentTimeMillis();
+		java.util.List<String> dueIds = jedisCollectDueSessions(expiryIndex, timeNow);
+		int expireHere = 0;
+		for (String id : dueIds) {
+			Session session = sessions.get(id);
+			if (session == null) { //ڱڵ,rediskeyɹʱԼɾ
+				continue;
+			}
+			if (!session.isValid()) { //isValid()expire()
+				expireHere++;
+				continue;
+			}
+			//ڵϵķûˢredisĹʱ(),صʱµǼ
+			int maxInactive = session.getMaxInactiveInterval();
+			if (maxInactive > 0 && session instanceof RedisSession) {
+				int remaining = maxInactive - (int) ((timeNow - session.getThisAccessedTimeInternal()) / 1000L);
+				try {
+					jedisTouch(TOMCAT_SESSION_PREFIX + id, Math.max(remaining, 1), ((RedisSession) session).getMetadata());
+				} catch (Exception ex) {
+					log.error("error:id=" + id, ex);
+				}
+			}
+		}
+		long timeEnd = System.currentTimeMillis();
+		if (this.debugEnabled) {
+			log.info("expire sessions from index: due=" + dueIds.size() + ",expired=" + expireHere + ",processingTime=" + (timeEnd - timeNow));
+		}
+		processingTime += (timeEnd - timeNow);
+	}
+
+	public boolean isStarted() {
+		return (super.getState() == LifecycleState.STARTED);
+	}
+
+	/**
+	 * ӳǷ.ֹͣʱͷӳ֮ǰ,첽кֹͣʱдȻҪܰ޸дredis,
+	 * д޸ʱisStarted()
+	 */
+	boolean isWritable() {
+		return _poolEntry != null;
+	}
+
+	@Override
+	protected void startInternal() throws LifecycleException {
+		super.startInternal();
+		_drained = false;
+
+		debugEnabled = Boolean.parseBoolean(debug);
+		stickySessionEnabled = Boolean.parseBoolean(stickySession);
+		writeBehindEnabled = Boolean.parseBoolean(writeBehind);
+		expireRefreshRatioValue = Float.parseFloat(expireRefreshRatio);
+		if (expireRefreshRatioValue < 0f || expireRefreshRatioValue >= 1f) {
+			log.warn("expireRefreshRatio must be in [0,1), ignored:" + expireRefreshRatio);
+			expireRefreshRatioValue = 0f;
+		}
+		if (writeBehindEnabled && this.getContainer() != null) {
+			_valve = new RedisSessionValve(this);
+			this.getContainer().getPipeline().addValve(_valve);
+		}
+		if (Boolean.parseBoolean(prefetch) && this.getContainer() != null && this.getContainer().getParent() != null) {
+			//ContextPipeline֤ValveѾװ,removeValve()Valve,û˳,װHost
+			int prefetchThreadsValue = Integer.parseInt(prefetchThreads);
+			_prefetcher = new SessionPrefetcher(this, prefetchThreadsValue, prefetchThreadsValue * 16);
+			SessionPrefetchValve.install(this);
+		}
+
+		_shards = parseShards();
+
+		try {
+			_poolEntry = RedisPoolRegistry.acquire(_shards, Integer.parseInt(maxConn), Integer.parseInt(minConn));
+			_pool = _poolEntry.pool;
+			_shardedPool = _poolEntry.shardedPool;
+			log.info("ʼRedisManager:" + this.toString());
+		} catch (Exception ex) {
+			log.error("error:", ex);
+		}
+
+		int circuitBreakerThresholdValue = Integer.parseInt(circuitBreakerThreshold);
+		if (circuitBreakerThresholdValue > 0) {
+			if (_shards.size() > 1) {
+				_shardLocator = new redis.clients.util.Sharded<Jedis, JedisShardInfo>(_shards);
+			}
+			_breaker = new RedisCircuitBreaker(_shards, circuitBreakerThresholdValue, Long.parseLong(circuitBreakerProbeInterval));
+		}
+
+		if (Boolean.parseBoolean(asyncPersist)) {
+			_persistExecutor = new SessionPersistExecutor(Integer.parseInt(asyncThreads), Integer.parseInt(asyncQueueSize), asyncBackpressure);
+		}
+
+		nearCacheEnabled = Boolean.parseBoolean(nearCache);
+		if (nearCacheEnabled && !stickySessionEnabled) {
+			_nearCache = new SessionNearCache(_shards);
+			_nearCache.start();
+		}
+
+		_serializer = createSerializer();
+
+		if (!"none".equals(compression)) {
+			_compression = new SessionCompression(compression, Integer.parseInt(compressionThreshold));
+		}
+
+		_attributeFilter = new SessionAttributeFilter(replicatedAttributes, localAttributes);
+
+		int telemetrySampleRateValue = Integer.parseInt(telemetrySampleRate);
+		if (telemetrySampleRateValue > 0) {
+			_telemetry = new SessionTelemetry(this, telemetrySampleRateValue, Integer.parseInt(telemetryTopN));
+			registerTelemetry();
+		}
+
+		if (Boolean.parseBoolean(deltaSync) && !stickySessionEnabled) {
+			_versions = new SessionVersions();
+		}
+
+		int chunkSizeValue = Integer.parseInt(chunkSize);
+		if (chunkSizeValue > 0) {
+			_chunks = new SessionChunks(chunkSizeValue, Math.max(1, Integer.parseInt(chunkFetchBatch)));
+		}
+
+		if (Boolean.parseBoolean(expiryIndex)) {
+			_expiryIndex = new SessionExpiryIndex(Integer.parseInt(expiryIndexBatch));
+			_expiryFullScanFrequencyValue = Integer.parseInt(expiryFullScanFrequency);
+			_expiryChecks = 0;
+		}
+
+		long negativeCacheTTLValue = Long.parseLong(negativeCacheTTL);
+		if (negativeCacheTTLValue > 0) {
+			_negativeCache = new SessionNegativeCache(negativeCacheTTLValue, Integer.parseInt(negativeCacheSize));
+		}
+
+		int maxLocalSessionsValue = Integer.parseInt(maxLocalSessions);
+		long maxLocalSessionBytesValue = Long.parseLong(maxLocalSessionBytes);
+		float heapPressureThresholdValue = Float.parseFloat(heapPressureThreshold);
+		if (heapPressureThresholdValue < 0f || heapPressureThresholdValue >= 1f) {
+			log.warn("heapPressureThreshold must be in [0,1), ignored:" + heapPressureThreshold);
+			heapPressureThresholdValue = 0f;
+		}
+		if (maxLocalSessionsValue > 0 || maxLocalSessionBytesValue > 0 || heapPressureThresholdValue > 0f) {
+			_passivator = new SessionPassivator(this, maxLocalSessionsValue, maxLocalSessionBytesValue, Integer.parseInt(passivateMinIdle), heapPressureThresholdValue);
+			_passivator.start();
+		}
+	}
+
+	/**
+	 * ÿpipelineдٸsession
+	 */
+	private static final int DRAIN_BATCH = 200;
+
+	private boolean isDrainEnabled() {
+		return Long.parseLong(drainTimeout) > 0 && _poolEntry != null;
+	}
+
+	/**
+	 * ֹͣʱбsessionдredis:ڵredis,ÿredisһ߳,ÿDRAIN_BATCHsessionһpipeline,
+	 * drainTimeoutûдķ;ִеpipelineж,ŷ,ܹ֮黹ӳغunload().
+	 * ȫдɹŲJavaлдļ,ʱredisʱȻunload()дļ.
+	 */
+	private void drain() {
+		if (!isDrainEnabled()) {
+			return;
+		}
+		final long timeout = Long.parseLong(drainTimeout);
+		final long deadline = System.currentTimeMillis() + timeout;
+
+		//redis->redisϵsession
+		redis.clients.util.Sharded<Jedis, JedisShardInfo> shardLocator = (_shards.size() > 1) ? new redis.clients.util.Sharded<Jedis, JedisShardInfo>(_shards) : null;
+		java.util.Map<JedisShardInfo, java.util.List<RedisSession>> shards = new java.util.HashMap<JedisShardInfo, java.util.List<RedisSession>>();
+		int total = 0;
+		for (Session session : findSessions()) {
+			if (!(session instanceof RedisSession) || !session.isValid()) {
+				continue;
+			}
+			JedisShardInfo shardInfo = (shardLocator == null) ? _shards.get(0) : shardLocator.getShardInfo(TOMCAT_SESSION_PREFIX + session.getIdInternal());
+			java.util.List<RedisSession> list = shards.get(shardInfo);
+			if (list == null) {
+				list = new java.util.ArrayList<RedisSession>();
+				shards.put(shardInfo, list);
+			}
+			list.add((RedisSession) session);
+			total++;
+		}
+		if (total == 0) {
+			_drained = true;
+			return;
+		}
+
+		final java.util.concurrent.atomic.AtomicInteger drained = new java.util.concurrent.atomic.AtomicInteger();
+		java.util.List<Thread> workers = new java.util.ArrayList<Thread>();
+		for (java.util.Map.Entry<JedisShardInfo, java.util.List<RedisSession>> entry : shards.entrySet()) {
+			final java.util.List<RedisSession> list = entry.getValue();
+			Thread worker = new Thread("RedisManager-Drain-" + RedisCircuitBreaker.shardName(entry.getKey())) {
+				@Override
+				public void run() {
+					for (int from = 0; from < list.size() && System.currentTimeMillis() < deadline && !isInterrupted(); from += DRAIN_BATCH) {
+						final java.util.List<RedisSession> batch = list.subList(from, Math.min(from + DRAIN_BATCH, list.size()));
+						try {
+							//ͬһsessionredis,õһsessionkeyѡredis
+							jedisPipelined(TOMCAT_SESSION_PREFIX + batch.get(0).getIdInternal(), new PipelineBlock() {
+								@Override
+								public void execute() {
+									for (RedisSession redisSession : batch) {
+										redisSession.drainTo(this);
+									}
+								}
+							});
+							drained.addAndGet(batch.size());
+						} catch (Exception ex) {
+							log.error("drain error:", ex);
+						}
+					}
+				}
+			};
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		boolean interrupted = false;
+		for (Thread worker : workers) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining > 0 && !interrupted) {
+				try {
+					worker.join(remaining);
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		for (Thread worker : workers) { //ʱ:ٿʼµpipeline,ִеpipeline(socketTO)
+			worker.interrupt();
+		}
+		for (Thread worker : workers) {
+			while (worker.isAlive()) {
+				try {
+					worker.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		_drained = (drained.get() == total);
+		if (!_drained) {
+			log.warn("drain incomplete, fall back to unload():" + drained.get() + "/" + total);
+		}
+		log.info("drained sessions to redis:" + drained.get() + "/" + total + ",shards:" + shards.size() + ",ms:" + (System.currentTimeMillis() + timeout - deadline));
+	}
+
+	/**
+	 * ֹͣʱѾsessionдredis,Javaлдļ(ĽڵҲ).
+	 * doUnload()һexpire(false)ñsessionʧЧ,֪ͨ,֮stopInternal()Ҳ֪ͨ.
+	 */
+	@Override
+	public void unload() throws IOException {
+		if (_drained) {
+			for (Session session : findSessions()) {
+				try {
+					((StandardSession) session).expire(false);
+				} catch (Throwable t) {
+					ExceptionUtils.handleThrowable(t);
+				} finally {
+					((StandardSession) session).recycle();
+				}
+			}
+			return;
+		}
+		super.unload();
+	}
+
+	private void registerTelemetry() {
+		try {
+			String context = "/";
+			String host = "";
+			if (this.getContainer() != null) {
+				context = this.getContainer().getName();
+				if (context == null || context.length() == 0) {
+					context = "/";
+				}
+				if (this.getContainer().getParent() != null) {
+					host = this.getContainer().getParent().getName();
+				}
+			}
+			_telemetryName = new javax.management.ObjectName("Catalina:type=RedisSessionTelemetry,host=" + javax.management.ObjectName.quote(host) + ",context="
+			    + javax.management.ObjectName.quote(context));
+			java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(_telemetry, _telemetryName);
+		} catch (Exception ex) {
+			log.warn("can not register telemetry MBean:" + _telemetryName, ex);
+			_telemetryName = null;
+		}
+	}
+
+	private void unregisterTelemetry() {
+		if (_telemetryName == null) {
+			return;
+		}
+		try {
+			java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(_telemetryName);
+		} catch (Exception ex) {
+			log.warn("can not unregister telemetry MBean:" + _telemetryName, ex);
+		}
+		_telemetryName = null;
+	}
+
+	private SessionSerializer createSerializer() throws LifecycleException {
+		SessionSerializer sessionSerializer;
+		if (KryoSessionSerializer.NAME.equals(serializer)) {
+			sessionSerializer = new KryoSessionSerializer();
+		} else if (JavaSessionSerializer.NAME.equals(serializer)) {
+			sessionSerializer = new JavaSessionSerializer();
+		} else {
+			try {
+				sessionSerializer = (SessionSerializer) Class.forName(serializer).getDeclaredConstructor().newInstance();
+			} catch (Exception ex) {
+				throw new LifecycleException("can not create serializer:" + serializer, ex);
+			}
+		}
+
+		_classRegistry = null;
+		if (Boolean.parseBoolean(classRegistry)) {
+			if (sessionSerializer instanceof KryoSessionSerializer) {
+				_classRegistry = new SessionClassRegistry(this);
+				((KryoSessionSerializer) sessionSerializer).setClassRegistry(_classRegistry);
+			} else {
+				log.warn("classRegistry only works with kryo serializer, ignored:" + serializer);
+			}
+		}
+
+		ClassLoader classLoader = null;
+		if (this.getContainer() != null && this.getContainer().getLoader() != null) {
+			classLoader = this.getContainer().getLoader().getClassLoader();
+		}
+		try {
+			sessionSerializer.init(classLoader);
+		} catch (RuntimeException ex) {
+			throw new LifecycleException("can not init serializer:" + serializer, ex);
+		}
+		return sessionSerializer;
+	}
+
+	private java.util.List<JedisShardInfo> parseShards() {
+		String[] servers = serverlist.split(",");
+		java.util.List<JedisShardInfo> shards = new java.util.ArrayList<JedisShardInfo>(servers.length);
+		for (int i = 0; i < servers.length; i++) {
+			String[] hostAndPort = servers[i].split(":");
+			JedisShardInfo shardInfo = new JedisShardInfo(hostAndPort[0], Integer.parseInt(hostAndPort[1]), Integer.valueOf(socketTO));
+			if (hostAndPort.length == 3) {
+				shardInfo.setPassword(hostAndPort[2]);
+			}
+			shards.add(shardInfo);
+		}
+		return shards;
+	}
+
+	@Override
+	protected void stopInternal() throws LifecycleException {
+		try {
+			if (_persistExecutor != null) {
+				if (isDrainEnabled()) { //޸session,sessionһredisд
+					_persistExecutor.abandon(10000L);
+				} else { //ȰѶ޸д
+					_persistExecutor.shutdown(10000L);
+				}
+				_persistExecutor = null;
+			}
+			drain();
+			_negativeCache = null;
+			_expiryIndex = null;
+			_breaker = null;
+			_shardLocator = null;
+			_resyncSessions.clear();
+			_compression = null;
+			_chunks = null;
+			_versions = null;
+			if (_serializer instanceof KryoSessionSerializer) { //KryoʵwebӦõClassLoader
+				((KryoSessionSerializer) _serializer).destroy();
+			}
+			_classRegistry = null;
+			if (_telemetry != null) {
+				unregisterTelemetry();
+				_telemetry = null;
+			}
+			if (_passivator != null) {
+				_passivator.stop();
+				_passivator = null;
+			}
+			if (_nearCache != null) {
+				_nearCache.stop();
+				_nearCache = null;
+			}
+			if (_poolEntry != null) { //һʹֹͣʱӳ
+				RedisPoolRegistry.PoolEntry poolEntry = _poolEntry;
+				_poolEntry = null;
+				_pool = null;
+				_shardedPool = null;
+				RedisPoolRegistry.release(poolEntry);
+				log.info("RedisManager:" + this.toString());
+			}
+		} finally {
+			if (_valve != null) {
+				try {
+					this.getContainer().getPipeline().removeValve(_valve);
+				} catch (Exception ex) {
+					log.error("error:", ex);
+				}
+				_valve = null;
+			}
+			if (_prefetcher != null) {
+				try {
+					SessionPrefetchValve.uninstall(this);
+				} catch (Exception ex) {
+					log.error("error:", ex);
+				}
+				_prefetcher.stop();
+				_prefetcher = null;
+			}
+			super.stopInternal();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RedisManager{" + "stickySession=" + stickySession + ",debug=" + debug + ",serverlist=" + serverlist
+		    + ",minConn=" + minConn + ",maxConn=" + maxConn + ",socketTO=" + socketTO + ",writeBehind=" + writeBehind + ",nearCache=" + nearCache + ",expireRefreshRatio=" + expireRefreshRatio
+		    + ",asyncPersist=" + asyncPersist + ",asyncThreads=" + asyncThreads + ",asyncQueueSize=" + asyncQueueSize + ",asyncBackpressure="
+		    + asyncBackpressure + ",maxLocalSessions=" + maxLocalSessions + ",maxLocalSessionBytes=" + maxLocalSessionBytes + ",passivateMinIdle="
+		    + passivateMinIdle + ",heapPressureThreshold=" + heapPressureThreshold + ",negativeCacheTTL=" + negativeCacheTTL + ",negativeCacheSize="
+		    + negativeCacheSize + ",expiryIndex=" + expiryIndex + ",expiryIndexBatch=" + expiryIndexBatch + ",expiryFullScanFrequency=" + expiryFullScanFrequency
+		    + ",compression=" + compression + ",compressionThreshold=" + compressionThreshold + ",serializer=" + serializer + ",classRegistry=" + classRegistry
+		    + ",circuitBreakerThreshold=" + circuitBreakerThreshold + ",circuitBreakerProbeInterval=" + circuitBreakerProbeInterval
+		    + ",chunkSize=" + chunkSize + ",chunkFetchBatch=" + chunkFetchBatch + ",deltaSync=" + deltaSync + ",prefetch=" + prefetch
+		    + ",prefetchThreads=" + prefetchThreads + ",replicatedAttributes=" + replicatedAttributes + ",localAttributes=" + localAttributes
+		    + ",telemetrySampleRate=" + telemetrySampleRate + ",telemetryTopN=" + telemetryTopN + ",drainTimeout=" + drainTimeout + '}';
+	}
+
+	/**
+	 * ʼ,֮߳϶sessionԵ޸ĶӳٵendRequest()ʱдredis.
+	 * 
+	 * @return ĵ÷true,ֻĵ߲ӦõendRequest()
+	 */
+	boolean beginRequest() {
+		if (_requestDirtySessions.get() != null) {
+			return false;
+		}
+		_requestDirtySessions.set(new java.util.LinkedHashSet<RedisSession>());
+		return true;
+	}
+
+	/**
+	 * ,ѱ߳б޸Ĺsessionpipelineдredis.
+	 */
+	void endRequest() {
+		java.util.Set<RedisSession> dirtySessions = _requestDirtySessions.get();
+		_requestDirtySessions.remove();
+		if (dirtySessions == null) {
+			return;
+		}
+		for (RedisSession session : dirtySessions) {
+			persist(session);
+		}
+	}
+
+	/**
+	 * ǰ̶߳session޸Ƿӳдredis(дû첽ģʽ).
+	 * ߳(̨߳)ֻдģʽʱȻֱдredis.
+	 */
+	boolean isWriteBehind() {
+		return _persistExecutor != null || (writeBehindEnabled && _requestDirtySessions.get() != null);
+	}
+
+	void markDirty(RedisSession session) {
+		java.util.Set<RedisSession> dirtySessions = _requestDirtySessions.get();
+		if (dirtySessions != null) {
+			dirtySessions.add(session);
+		} else if (_persistExecutor != null) {
+			_persistExecutor.submit(session);
+		}
+	}
+
+	/**
+	 * session۵޸дredis:첽ģʽ·Ž,ڵǰ߳д.
+	 */
+	void persist(RedisSession session) {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		if (persistExecutor != null) {
+			persistExecutor.submit(session);
+		} else {
+			session.flush();
+		}
+	}
+
+	/**
+	 * 첽деǰĳ
+	 */
+	public int getAsyncQueueDepth() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getQueueDepth();
+	}
+
+	/**
+	 * 첽дһѾȴĺ
+	 */
+	public long getAsyncQueueLag() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getQueueLag();
+	}
+
+	/**
+	 * 첽дŶӵʼдȴ
+	 */
+	public long getAsyncMaxLag() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getMaxLag();
+	}
+
+	/**
+	 * 첽дʱ,ϲŶд޸Ĵ
+	 */
+	public long getAsyncCoalesced() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getCoalesced();
+	}
+
+	/**
+	 * ʱdropOldestƳС߳ͬдŶ
+	 */
+	public long getAsyncDropped() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getDropped();
+	}
+
+	/**
+	 * ʱ˻صͬдĴ
+	 */
+	public long getAsyncSyncFallbacks() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getSyncFallbacks();
+	}
+
+	/**
+	 * ̨߳ɵд
+	 */
+	public long getAsyncFlushed() {
+		SessionPersistExecutor persistExecutor = _persistExecutor;
+		return (persistExecutor == null) ? 0 : persistExecutor.getFlushed();
+	}
+
+	/**
+	 * Ϊƻ߶ڴŴӱƳsession
+	 */
+	public long getPassivatedSessions() {
+		SessionPassivator passivator = _passivator;
+		return (passivator == null) ? 0 : passivator.getPassivated();
+	}
+
+	/**
+	 * session԰лСƵֽ,ÿbackgroundProcess()ʱ
+	 */
+	public long getEstimatedLocalBytes() {
+		SessionPassivator passivator = _passivator;
+		return (passivator == null) ? 0 : passivator.getEstimatedBytes();
+	}
+
+	/**
+	 * GCʹʳheapPressureThresholdĴ
+	 */
+	public long getHeapPressureEvents() {
+		SessionPassivator passivator = _passivator;
+		return (passivator == null) ? 0 : passivator.getHeapPressureEvents();
+	}
+
+	/**
+	 * ۶ϵredis,ŷָ
+	 */
+	public String getOpenShards() {
+		RedisCircuitBreaker breaker = _breaker;
+		return (breaker == null) ? "" : breaker.getOpenShards();
+	}
+
+	/**
+	 * ۶ϵĴ
+	 */
+	public long getCircuitBreakerTrips() {
+		RedisCircuitBreaker breaker = _breaker;
+		return (breaker == null) ? 0 : breaker.getTrips();
+	}
+
+	/**
+	 * ȴдredissession
+	 */
+	public int getResyncPendingSessions() {
+		return _resyncSessions.size();
+	}
+
+	/**
+	 * findSession()ʱΪȷϹڶûвredisĴ
+	 */
+	public long getNegativeCacheHits() {
+		SessionNegativeCache negativeCache = _negativeCache;
+		return (negativeCache == null) ? 0 : negativeCache.getHits();
+	}
+
+	/**
+	 * ǰסĲڵsessionId
+	 */
+	public int getNegativeCachedIds() {
+		SessionNegativeCache negativeCache = _negativeCache;
+		return (negativeCache == null) ? 0 : negativeCache.getSize();
+	}
+
+	/**
+	 * ޸redispipeline︽near-cacheʧЧϢ,ûдnear-cacheʱʲôҲ.
+	 */
+	void publishInvalidation(Pipeline pipeline, String sessionId, String... names) {
+		if (_nearCache != null) {
+			_nearCache.publish(pipeline, sessionId, names);
+		}
+	}
+
+	/**
+	 * ͬʱ,޸redispipelinesessionЩԵİ汾,ûдʱnull.
+	 * pipelineִҪapplyVersions().
+	 */
+	SessionVersions.Stamp recordVersions(Pipeline pipeline, String sessionId, String... names) {
+		SessionVersions versions = _versions;
+		return (versions == null) ? null : versions.record(pipeline, sessionId, names);
+	}
+
+	/**
+	 * ڵԼд벻Ҫͬ:°汾żǵصsession
+	 */
+	void applyVersions(SessionVersions.Stamp stamp) {
+		if (stamp == null) {
+			return;
+		}
+		Session session = sessions.get(stamp.sessionId);
+		if (session instanceof RedisSession) {
+			((RedisSession) session).advanceVersions(stamp);
+		}
+	}
+
+	/**
+	 * SYNC_SCRIPTһ"汾knownVersion֮ʲô",redis֧luaűʱһpipelineȡذ汾źԵİ汾
+	 */
+	SessionVersions.Delta jedisSyncVersions(String sessionId, long knownVersion) {
+		final String key = TOMCAT_SESSION_PREFIX + sessionId;
+		final byte[] bytesKey = SafeEncoder.encode(key);
+		final byte[] versionsKey = SessionVersions.versionsKey(sessionId);
+		if (scriptingSupported) {
+			try {
+				java.util.List<?> reply = (java.util.List<?>) jedisEval(key, SessionVersions.SYNC_SCRIPT, 2, bytesKey, versionsKey,
+				    SafeEncoder.encode(String.valueOf(knownVersion)), SessionVersions.FIELD_BYTES);
+				return SessionVersions.parse(reply);
+			} catch (JedisDataException ex) {
+				if (ex.getMessage() == null || !ex.getMessage().contains("unknown command")) {
+					throw ex;
+				}
+				scriptingSupported = false;
+				log.warn("redis server does not support EVAL/EVALSHA, fall back to pipeline:" + ex.getMessage());
+			}
+		}
+
+		java.util.List<Object> results = jedisExecute(key, true, new JedisCallback<java.util.List<Object>>() {
+			public java.util.List<Object> execute(Jedis jedis) {
+				return checkReplies(jedis.pipelined(new PipelineBlock() {
+					@Override
+					public void execute() {
+						hget(bytesKey, SessionVersions.FIELD_BYTES);
+						hgetAll(versionsKey);
+					}
+				}));
+			}
+		});
+		@SuppressWarnings("unchecked")
+		java.util.Map<String, String> versions = (java.util.Map<String, String>) results.get(1);
+		return SessionVersions.parse((byte[]) results.get(0), versions);
+	}
+
+	/**
+	 * һȡsessionĶֵ,ûеnull
+	 */
+	java.util.List<byte[]> jedisHmget(String sessionId, final java.util.List<String> names) {
+		final String key = TOMCAT_SESSION_PREFIX + sessionId;
+		return jedisExecute(key, true, new JedisCallback<java.util.List<byte[]>>() {
+			public java.util.List<byte[]> execute(Jedis jedis) {
+				byte[][] fields = new byte[names.size()][];
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = SafeEncoder.encode(names.get(i));
+				}
+				return jedis.hmget(SafeEncoder.encode(key), fields);
+			}
+		});
+	}
+
+	/**
+	 * sessionredisĹʱ().expireRefreshRatioʱ,ڲˢEXPIRE,
+	 * Լ,rediskeyڱصĿгʱ֮ǰ.
+	 */
+	int expireSeconds(int maxInactiveInterval) {
+		if (maxInactiveInterval <= 0 || expireRefreshRatioValue <= 0f) {
+			return maxInactiveInterval;
+		}
+		return maxInactiveInterval + (int) Math.ceil(expireRefreshRatioValue * maxInactiveInterval);
+	}
+
+	/**
+	 * дsessionԪ(SessionMetadata)ˢsessionredisĹʱ.
+	 * TOUCH_SCRIPTsessionڵredisһ;redis֧luaű(2.6ǰ)ʱ,
+	 * һpipelineдԪݲùʱ.
+	 * <p>
+	 * ˻صķʽﲻ"ÿaccess()һ"Ҫ:ֲ֧֮ǰǴεҪ(ʧܵEVALSHApipeline);
+	 * ֮ÿζһpipeline,ȻҲһ,ǲԭӵ,дҲ.
+	 * ʱȽϼtestµTouchBenchmark.
+	 */
+	void jedisTouch(final String key, final int seconds, final byte[] metadata) {
+		final int ttl = expireSeconds(seconds);
+		final byte[] bytesKey = SafeEncoder.encode(key);
+		final byte[] chunkKey = SessionChunks.chunkKey(key.substring(TOMCAT_SESSION_PREFIX.length()));
+		final byte[] versionsKey = SessionVersions.versionsKey(key.substring(TOMCAT_SESSION_PREFIX.length()));
+		long now = System.currentTimeMillis();
+		if (scriptingSupported) {
+			try {
+				if (_expiryIndex != null) {
+					jedisEval(key, TOUCH_SCRIPT, 4, bytesKey, chunkKey, versionsKey, SessionExpiryIndex.INDEX_KEY_BYTES, Protocol.toByteArray(ttl),
+					    SessionMetadata.FIELD_BYTES, metadata, SafeEncoder.encode(key.substring(TOMCAT_SESSION_PREFIX.length())),
+					    SafeEncoder.encode(String.valueOf(now + seconds * 1000L)));
+				} else {
+					jedisEval(key, TOUCH_SCRIPT, 3, bytesKey, chunkKey, versionsKey, Protocol.toByteArray(ttl), SessionMetadata.FIELD_BYTES, metadata);
+				}
+				return;
+			} catch (JedisDataException ex) {
+				if (ex.getMessage() == null || !ex.getMessage().contains("unknown command")) {
+					throw ex;
+				}
+				scriptingSupported = false;
+				log.warn("redis server does not support EVAL/EVALSHA, fall back to EXPIRE+pipeline:" + ex.getMessage());
+			}
+		}
+
+		jedisPipelined(key, new PipelineBlock() {
+			@Override
+			public void execute() {
+				hset(bytesKey, SessionMetadata.FIELD_BYTES, metadata);
+				if (seconds > 0) {
+					expire(bytesKey, ttl);
+					expire(chunkKey, ttl);
+					expire(versionsKey, ttl);
+				} else {
+					persist(bytesKey);
+					persist(chunkKey);
+					persist(versionsKey);
+				}
+				indexExpiry(this, key.substring(TOMCAT_SESSION_PREFIX.length()), seconds);
+			}
+		});
+	}
+
+	/**
+	 * 򿪹ʱ,޸redispipelineͬʱsessionĹʱ
+	 */
+	void indexExpiry(Pipeline pipeline, String sessionId, int seconds) {
+		if (_expiryIndex != null) {
+			SessionExpiryIndex.index(pipeline, sessionId, seconds);
+		}
+	}
+
+	/**
+	 * ÿredisĹȡڵsessionId.һredisӰredis.
+	 */
+	java.util.List<String> jedisCollectDueSessions(SessionExpiryIndex expiryIndex, long now) {
+		java.util.List<String> ids = new java.util.ArrayList<String>();
+		RedisCircuitBreaker breaker = _breaker;
+		JedisPool pool = _pool;
+		ShardedJedisPool shardedPool = _shardedPool;
+		Jedis jedis = null;
+		ShardedJedis shardedJedis = null;
+		boolean broken = false;
+		try {
+			java.util.Collection<Jedis> shards;
+			if (pool != null) {
+				jedis = pool.getResource();
+				shards = java.util.Collections.singletonList(jedis);
+			} else {
+				shardedJedis = shardedPool.getResource();
+				shards = shardedJedis.getAllShards();
+			}
+			for (Jedis jedisA : shards) {
+				String shard = jedisA.getClient().getHost() + ":" + jedisA.getClient().getPort();
+				if (breaker != null && breaker.isOpen(shard)) {
+					continue;
+				}
+				try {
+					ids.addAll(expiryIndex.collectDue(jedisA, now));
+					shardSucceeded(shard);
+				} catch (JedisDataException ex) {
+					log.error("error:", ex);
+				} catch (Exception ex) {
+					log.error("error:", ex);
+					broken = true;
+					if (ex instanceof JedisConnectionException) {
+						shardFailed(shard, (JedisConnectionException) ex);
 					}
 				}
 			}
-		} else {
-			ShardedJedis jedis = null;
-			try {
-				jedis = _shardedPool.getResource();
-				return jedis.hdel(hkey, field);
-			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
+		} catch (JedisConnectionException ex) { //ӳ
+			log.error("error:", ex);
+		} finally {
+			returnResource(pool, shardedPool, jedis, shardedJedis, broken);
+		}
+		return ids;
+	}
+
+	/**
+	 * access()ʱǷҪˢredissessionĹʱ,ۼƼ.
+	 */
+	boolean needExpireRefresh(RedisSession session, long now) {
+		if (expireRefreshRatioValue > 0f && session.getMaxInactiveInterval() > 0 && session._lastExpireRefresh > 0) {
+			if (now - session._lastExpireRefresh < (long) (expireRefreshRatioValue * session.getMaxInactiveInterval() * 1000L)) {
+				_expireRefreshSuppressed.incrementAndGet();
+				return false;
+			}
+		}
+		_expireRefreshSent.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * access()ʱʵʷ͵redisĹʱˢ´
+	 */
+	public long getExpireRefreshSent() {
+		return _expireRefreshSent.get();
+	}
+
+	/**
+	 * access()ʱΪĹʱˢ´
+	 */
+	public long getExpireRefreshSuppressed() {
+		return _expireRefreshSuppressed.get();
+	}
+
+	byte[] serialize(Object obj) throws IOException {
+		byte[] bb = _serializer.serialize(obj);
+		SessionCompression compression = _compression;
+		return (compression == null) ? bb : compression.compress(obj, bb);
+	}
+
+	Object deserialize(byte[] bb) throws IOException, ClassNotFoundException {
+		if (SessionChunks.isManifest(bb)) { //ɵȡеĿٷл
+			return SessionChunks.decode(bb);
+		}
+		if (!SessionCompression.isCompressed(bb)) {
+			return _serializer.deserialize(bb);
+		}
+
+		//رѹԺ,ǰѹȻҪܶȡ
+		long start = System.nanoTime();
+		byte[] uncompressed = SessionCompression.decompress(bb);
+		long nanos = System.nanoTime() - start;
+		Object obj = _serializer.deserialize(uncompressed);
+		SessionCompression compression = _compression;
+		if (compression != null) {
+			compression.recordDecompress(obj, nanos);
+		}
+		return obj;
+	}
+
+	/**
+	 * ǷƵredis,ֻڱصԲл,Ҳдredis
+	 */
+	boolean isReplicated(String name) {
+		return _attributeFilter.isReplicated(name);
+	}
+
+	/**
+	 * дֱͨģʽֵܷ񲻾мbyte[]ֱлredisӵ:
+	 * лʽkryo,ûдѹ(ѹҪȵõл),Ҳûд򿪵(Ҫӡл)
+	 */
+	boolean isStreamingWrite() {
+		return _compression == null && _serializer instanceof KryoSessionSerializer && !debugEnabled;
+	}
+
+	/**
+	 * isStreamingWrite()ΪtrueʱſԵ
+	 */
+	BulkArgument serializeBulk(Object obj) {
+		return ((KryoSessionSerializer) _serializer).serializeBulk(obj);
+	}
+
+	/**
+	 * Ҫֿ鱣ֱֵдredis,дbyte[]
+	 */
+	static byte[] toBytes(BulkArgument bulkValue) throws IOException {
+		java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream(bulkValue.length());
+		redis.clients.util.RedisOutputStream ros = new redis.clients.util.RedisOutputStream(bos);
+		bulkValue.writeTo(ros);
+		ros.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * ֱֵܷӴredisӵ뻺л:лʽkryo,Ҳûд򿪵(Ҫӡл)
+	 */
+	boolean isStreamingRead() {
+		return _serializer instanceof KryoSessionSerializer && !debugEnabled;
+	}
+
+	/**
+	 * redisӵ뻺л.ѹֵҪٽѹ.
+	 * 
+	 * @param length
+	 *          лֽ
+	 */
+	Object deserialize(InputStream in, int length) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, 2);
+		if (length >= 2) {
+			int b0 = pin.read();
+			int b1 = pin.read();
+			byte[] header = new byte[] { (byte) b0, (byte) b1 };
+			if (SessionChunks.isManifest(header, length)) { //ɵȡеĿٷл
+				byte[] bb = new byte[length];
+				bb[0] = header[0];
+				bb[1] = header[1];
+				int offset = 2;
+				while (offset < length) {
+					int n = pin.read(bb, offset, length - offset);
+					if (n < 0) {
+						throw new java.io.EOFException();
+					}
+					offset += n;
+				}
+				return SessionChunks.decode(bb);
+			}
+			if (SessionCompression.isCompressed(header, length)) {
+				byte[] bb = new byte[length];
+				bb[0] = header[0];
+				bb[1] = header[1];
+				int offset = 2;
+				while (offset < length) {
+					int n = pin.read(bb, offset, length - offset);
+					if (n < 0) {
+						throw new java.io.EOFException();
 					}
+					offset += n;
+				}
+				try {
+					return deserialize(bb);
+				} catch (ClassNotFoundException ex) { //Protocol.readBulk()תJedisDataException,Ӵ
+					throw new IOException(ex.toString(), ex);
+				}
+			}
+			pin.unread(header);
+		}
+		return ((KryoSessionSerializer) _serializer).deserialize(pin);
+	}
+
+	/**
+	 * ȡطֿ鱣ֵп,ƴл.ÿpipelineȡchunkFetchBatch.
+	 */
+	Object loadChunked(String sessionId, final String name, final SessionChunks.Manifest manifest) throws IOException, ClassNotFoundException {
+		final byte[] chunkKey = SessionChunks.chunkKey(sessionId);
+		int fetchBatch = (_chunks == null) ? 16 : _chunks.getFetchBatch();
+		java.util.List<byte[]> chunks = new java.util.ArrayList<byte[]>(manifest.count);
+		for (int first = 0; first < manifest.count; first += fetchBatch) {
+			final int from = first;
+			final int to = Math.min(first + fetchBatch, manifest.count);
+			//ֻpipelineظִ,ÿִµPipelineBlock
+			java.util.List<Object> results = jedisExecute(TOMCAT_SESSION_PREFIX + sessionId, true, new JedisCallback<java.util.List<Object>>() {
+				public java.util.List<Object> execute(Jedis jedis) {
+					return checkReplies(jedis.pipelined(new PipelineBlock() {
+						@Override
+						public void execute() {
+							for (int i = from; i < to; i++) {
+								hget(chunkKey, SessionChunks.chunkField(name, manifest.generation, i));
+							}
+						}
+					}));
 				}
+			});
+			for (Object result : results) {
+				chunks.add((byte[]) result);
 			}
 		}
+		return deserialize(SessionChunks.assemble(manifest, chunks));
+	}
+
+	/**
+	 * лlengthֽڵֵǷҪֿ鱣
+	 */
+	boolean isChunked(int length) {
+		SessionChunks sessionChunks = _chunks;
+		return sessionChunks != null && sessionChunks.isChunked(length);
+	}
+
+	/**
+	 * pipelineµĴŷֿдֵ,Ҫsession hash嵥.isChunked()ΪtrueʱſԵ
+	 * 
+	 * @param old
+	 *          һ嵥,֪ʱnull
+	 */
+	byte[] writeChunked(Pipeline pipeline, String sessionId, String name, byte[] data, SessionChunks.Manifest old, int seconds) {
+		return _chunks.write(pipeline, SessionChunks.chunkKey(sessionId), name, data, old, expireSeconds(seconds));
+	}
+
+	/**
+	 * һpipelineдֵп,滻嵥,ɾһĿ.isChunked()ΪtrueʱſԵ
+	 * 
+	 * @return µ嵥
+	 */
+	SessionChunks.Manifest jedisHsetChunked(final String sessionId, final String name, final byte[] data, final SessionChunks.Manifest old, final int seconds) {
+		final byte[] bytesKey = SafeEncoder.encode(TOMCAT_SESSION_PREFIX + sessionId);
+		final byte[][] manifest = new byte[1][];
+		final SessionVersions.Stamp[] stamp = new SessionVersions.Stamp[1];
+		jedisPipelined(TOMCAT_SESSION_PREFIX + sessionId, new PipelineBlock() {
+			@Override
+			public void execute() {
+				manifest[0] = writeChunked(this, sessionId, name, data, old, seconds);
+				hset(bytesKey, SafeEncoder.encode(name), manifest[0]);
+				if (old != null) {
+					SessionChunks.remove(this, SessionChunks.chunkKey(sessionId), name, old);
+				}
+				publishInvalidation(this, sessionId, name);
+				stamp[0] = recordVersions(this, sessionId, name);
+			}
+		});
+		applyVersions(stamp[0]);
+		return SessionChunks.decode(manifest[0]);
+	}
+
+	/**
+	 * ɾԭĿ
+	 */
+	void jedisRemoveChunks(final String sessionId, final String name, final SessionChunks.Manifest manifest) {
+		jedisPipelined(TOMCAT_SESSION_PREFIX + sessionId, new PipelineBlock() {
+			@Override
+			public void execute() {
+				SessionChunks.remove(this, SessionChunks.chunkKey(sessionId), name, manifest);
+			}
+		});
 	}
 
-	Long jedisDel(String key) {
-		if (_pool != null) {
-			Jedis jedis = null;
+	/**
+	 * HGETĻظֱӷлֵ,ͬʱлֽ
+	 */
+	final class AttributeReader implements BulkReplyReader<Object> {
+		int length = -1;
+
+		public Object read(InputStream in, int length) throws IOException {
+			this.length = length;
+			SharedClassResolver.beginStreaming(); //ӻڶȡ,ٽӲ
 			try {
-				jedis = _pool.getResource();
-				return jedis.del(key.getBytes(Protocol.CHARSET));
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
+				return deserialize(in, length);
 			} finally {
-				if (jedis != null) {
-					try {
-						_pool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
+				SharedClassResolver.endStreaming();
+			}
+		}
+	}
+
+	/**
+	 * ѹѹǰֽ֮,ûдѹʱ1
+	 */
+	public double getCompressionRatio() {
+		SessionCompression compression = _compression;
+		return (compression == null) ? 1.0 : compression.getRatio();
+	}
+
+	/**
+	 * ʼsessionԤ
+	 */
+	public long getPrefetchStarted() {
+		SessionPrefetcher prefetcher = _prefetcher;
+		return (prefetcher == null) ? 0 : prefetcher.getStarted();
+	}
+
+	/**
+	 * findSession()ȡԤĴ
+	 */
+	public long getPrefetchHits() {
+		SessionPrefetcher prefetcher = _prefetcher;
+		return (prefetcher == null) ? 0 : prefetcher.getHits();
+	}
+
+	/**
+	 * ̺߳Ͷж˶ûԤĴ
+	 */
+	public long getPrefetchRejected() {
+		SessionPrefetcher prefetcher = _prefetcher;
+		return (prefetcher == null) ? 0 : prefetcher.getRejected();
+	}
+
+	/**
+	 * ͬʱredis"ЩԸ"Ĵ
+	 */
+	public long getDeltaSyncChecks() {
+		SessionVersions versions = _versions;
+		return (versions == null) ? 0 : versions.getChecks();
+	}
+
+	/**
+	 * ͬʱΪĽڵ޸ĶȡصԸ
+	 */
+	public long getDeltaSyncRefreshed() {
+		SessionVersions versions = _versions;
+		return (versions == null) ? 0 : versions.getRefreshed();
+	}
+
+	/**
+	 * ڵ㻺ĹŸ
+	 */
+	public int getClassRegistrySize() {
+		SessionClassRegistry registry = _classRegistry;
+		return (registry == null) ? 0 : registry.getSize();
+	}
+
+	/**
+	 * ֵͳƵѹʺCPUʱ
+	 */
+	public String getCompressionStats() {
+		SessionCompression compression = _compression;
+		return (compression == null) ? "" : compression.getStatsReport();
+	}
+
+	/**
+	 * keyڵredisִеĲ
+	 */
+	interface JedisCallback<T> {
+		T execute(Jedis jedis);
+	}
+
+	//ӳʱִеĲִм
+	private static final int MAX_ATTEMPTS = 2;
+
+	/**
+	 * аkeyredisĲִ:۶,ӳȡkeyredis,ִcallback,黹.
+	 * ӳ(JedisConnectionException)߲֪ظûжʱ,(returnBrokenResource),Żӳ;
+	 * idempotentΪtrueĲµִ.
+	 * 
+	 * @param idempotent
+	 *          ظִǷûи
+	 */
+	<T> T jedisExecute(String key, boolean idempotent, JedisCallback<T> callback) {
+		for (int attempt = 1;; attempt++) {
+			final String shard = checkShard(key);
+			JedisPool pool = _pool;
+			ShardedJedisPool shardedPool = _shardedPool;
+			Jedis jedis;
+			ShardedJedis shardedJedis = null;
+			try {
+				if (pool != null) {
+					jedis = pool.getResource();
+				} else {
+					shardedJedis = shardedPool.getResource();
+					jedis = shardedJedis.getShard(key);
+				}
+			} catch (JedisConnectionException ex) { //ӳ,redis
+				if (!isPoolExhausted(ex)) { //ȴӳسʱǱڵĲ̫,redisĹ
+					shardFailed(shard, ex);
 				}
+				throw ex;
 			}
-		} else {
-			ShardedJedis jedis = null;
+
+			boolean broken = false;
 			try {
-				jedis = _shardedPool.getResource();
-				byte[] bytesKey = key.getBytes(Protocol.CHARSET);
-				Jedis jedisA = jedis.getShard(bytesKey);
-				return jedisA.del(bytesKey);
-			} catch (IOException e) {
-				throw new JedisConnectionException(e);
+				T result = callback.execute(jedis);
+				shardSucceeded(shard);
+				return result;
+			} catch (JedisDataException ex) { //redisصĴ,Ȼʹ
+				throw ex;
+			} catch (JedisConnectionException ex) {
+				broken = true;
+				shardFailed(shard, ex);
+				if (!idempotent || attempt >= MAX_ATTEMPTS) {
+					throw ex;
+				}
+				if (this.debugEnabled) {
+					log.info("retry on new connection:key=" + key + ",error=" + ex.getMessage());
+				}
+			} catch (RuntimeException ex) { //֪ظûж
+				broken = true;
+				throw ex;
 			} finally {
-				if (jedis != null) {
-					try {
-						_shardedPool.returnResource(jedis);
-					} catch (Throwable thex) {
-					}
+				returnResource(pool, shardedPool, jedis, shardedJedis, broken);
+			}
+		}
+	}
+
+	/**
+	 * 黹,brokenΪtrueʱ.һredisʱֻjedis,redisʱ黹shardedJedis
+	 */
+	private void returnResource(JedisPool pool, ShardedJedisPool shardedPool, Jedis jedis, ShardedJedis shardedJedis, boolean broken) {
+		try {
+			if (pool != null) {
+				if (jedis == null) {
+					return;
+				}
+				if (broken) {
+					pool.returnBrokenResource(jedis);
+				} else {
+					pool.returnResource(jedis);
+				}
+			} else {
+				if (shardedJedis == null) {
+					return;
+				}
+				if (broken) {
+					shardedPool.returnBrokenResource(shardedJedis);
+				} else {
+					shardedPool.returnResource(shardedJedis);
+				}
+			}
+		} catch (Throwable thex) {
+		}
+	}
+
+	/**
+	 * TS:classesڵredisϷ(ȡѾ)
+	 */
+	int jedisRegisterClass(final String className) {
+		//ʱINCRظִ
+		return jedisExecute(SessionClassRegistry.NAMES_KEY, false, new JedisCallback<Integer>() {
+			public Integer execute(Jedis jedis) {
+				return SessionClassRegistry.register(jedis, className);
+			}
+		});
+	}
+
+	/**
+	 * TS:classesڵredisϲŶӦ
+	 */
+	String jedisLookupClass(final int id) {
+		return jedisExecute(SessionClassRegistry.NAMES_KEY, true, new JedisCallback<String>() {
+			public String execute(Jedis jedis) {
+				return SessionClassRegistry.lookup(jedis, id);
+			}
+		});
+	}
+
+	//TODO@Redis
+	public Boolean jedisExists(final String key) {
+		return jedisExecute(key, true, new JedisCallback<Boolean>() {
+			public Boolean execute(Jedis jedis) {
+				return jedis.exists(key);
+			}
+		});
+	}
+
+	/**
+	 * ִֻпظִеĽű
+	 */
+	Object jedisEval(String key, final RedisLuaScript script, final int keyCount, final byte[]... params) {
+		return jedisExecute(key, true, new JedisCallback<Object>() {
+			public Object execute(Jedis jedis) {
+				return script.eval(jedis, keyCount, params);
+			}
+		});
+	}
+
+	java.util.Map<byte[], byte[]> jedisHgetAll(final String hkey) {
+		return jedisExecute(hkey, true, new JedisCallback<java.util.Map<byte[], byte[]>>() {
+			public java.util.Map<byte[], byte[]> execute(Jedis jedis) {
+				return jedis.hgetAll(SafeEncoder.encode(hkey));
+			}
+		});
+	}
+
+	Long jedisExpire(final String key, final int seconds) {
+		return jedisExecute(key, true, new JedisCallback<Long>() {
+			public Long execute(Jedis jedis) {
+				return jedis.expire(SafeEncoder.encode(key), seconds);
+			}
+		});
+	}
+
+	java.util.List<Object> jedisMulti(String key, final TransactionBlock jedisTransaction) {
+		return jedisExecute(key, false, new JedisCallback<java.util.List<Object>>() {
+			public java.util.List<Object> execute(Jedis jedis) {
+				return jedis.multi(jedisTransaction);
+			}
+		});
+	}
+
+	/**
+	 * pipelineвظִе,ʱִ.
+	 * شʱ׳JedisDataException,߰дʧܴ(޸ķŻsession)
+	 */
+	java.util.List<Object> jedisPipelined(String key, final PipelineBlock pipelineBlock) {
+		return jedisExecute(key, false, new JedisCallback<java.util.List<Object>>() {
+			public java.util.List<Object> execute(Jedis jedis) {
+				return checkReplies(jedis.pipelined(pipelineBlock));
+			}
+		});
+	}
+
+	/**
+	 * pipelineʱJedisJedisDataExceptionڽ׳,׳һ.
+	 * еĻظѾ,Ȼʹ.
+	 */
+	private static java.util.List<Object> checkReplies(java.util.List<Object> results) {
+		for (Object result : results) {
+			if (result instanceof JedisDataException) {
+				throw (JedisDataException) result;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * jedisHget(String,String)һ,ֵreaderֱӴӵ뻺ȡ
+	 * 
+	 * @return redisûfieldʱnull
+	 */
+	<T> T jedisHget(final String hkey, final String field, final BulkReplyReader<T> reader) {
+		return jedisExecute(hkey, true, new JedisCallback<T>() {
+			public T execute(Jedis jedis) {
+				return jedis.hget(SafeEncoder.encode(hkey), SafeEncoder.encode(field), reader);
+			}
+		});
+	}
+
+	byte[] jedisHget(final String hkey, final String field) {
+		return jedisExecute(hkey, true, new JedisCallback<byte[]>() {
+			public byte[] execute(Jedis jedis) {
+				return jedis.hget(SafeEncoder.encode(hkey), SafeEncoder.encode(field));
+			}
+		});
+	}
+
+	public Long jedisHset(final String hkey, final String field, final byte[] value) {
+		if (_nearCache != null || _versions != null) { //ͬһpipeline﷢ʧЧϢ,Ӱ汾
+			final SessionVersions.Stamp[] stamp = new SessionVersions.Stamp[1];
+			java.util.List<Object> results = jedisPipelined(hkey, new PipelineBlock() {
+				@Override
+				public void execute() {
+					hset(SafeEncoder.encode(hkey), SafeEncoder.encode(field), value);
+					publishInvalidation(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
+					stamp[0] = recordVersions(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
+				}
+			});
+			applyVersions(stamp[0]);
+			return (Long) results.get(0);
+		}
+
+		return jedisExecute(hkey, true, new JedisCallback<Long>() {
+			public Long execute(Jedis jedis) {
+				return jedis.hset(SafeEncoder.encode(hkey), SafeEncoder.encode(field), value);
+			}
+		});
+	}
+
+	/**
+	 * jedisHset(String,String,byte[])һ,ֵBulkArgumentֱдӵ
+	 */
+	Long jedisHset(final String hkey, final String field, final BulkArgument value) {
+		if (_nearCache != null || _versions != null) { //ͬһpipeline﷢ʧЧϢ,Ӱ汾
+			final SessionVersions.Stamp[] stamp = new SessionVersions.Stamp[1];
+			java.util.List<Object> results = jedisPipelined(hkey, new PipelineBlock() {
+				@Override
+				public void execute() {
+					hset(SafeEncoder.encode(hkey), SafeEncoder.encode(field), value);
+					publishInvalidation(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
+					stamp[0] = recordVersions(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
 				}
+			});
+			applyVersions(stamp[0]);
+			return (Long) results.get(0);
+		}
+
+		//valueظд
+		return jedisExecute(hkey, true, new JedisCallback<Long>() {
+			public Long execute(Jedis jedis) {
+				return jedis.hset(SafeEncoder.encode(hkey), SafeEncoder.encode(field), value);
+			}
+		});
+	}
+
+	public Long jedisHdel(final String hkey, final String field) {
+		if (_nearCache != null || _versions != null) { //ͬһpipeline﷢ʧЧϢ,Ӱ汾
+			final SessionVersions.Stamp[] stamp = new SessionVersions.Stamp[1];
+			java.util.List<Object> results = jedisPipelined(hkey, new PipelineBlock() {
+				@Override
+				public void execute() {
+					hdel(SafeEncoder.encode(hkey), SafeEncoder.encode(field));
+					publishInvalidation(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
+					stamp[0] = recordVersions(this, hkey.substring(TOMCAT_SESSION_PREFIX.length()), field);
+				}
+			});
+			applyVersions(stamp[0]);
+			return (Long) results.get(0);
+		}
+
+		return jedisExecute(hkey, true, new JedisCallback<Long>() {
+			public Long execute(Jedis jedis) {
+				return jedis.hdel(hkey, field);
 			}
+		});
+	}
+
+	Long jedisDel(final String key) {
+		final SessionNearCache nearCache = _nearCache;
+		final SessionExpiryIndex expiryIndex = _expiryIndex;
+		if (nearCache != null || expiryIndex != null) { //ͬһpipeline﷢ʧЧϢ,ɾ
+			java.util.List<Object> results = jedisPipelined(key, new PipelineBlock() {
+				@Override
+				public void execute() {
+					String sessionId = key.substring(TOMCAT_SESSION_PREFIX.length());
+					del(SafeEncoder.encode(key), SessionChunks.chunkKey(sessionId), SessionVersions.versionsKey(sessionId));
+					if (nearCache != null) {
+						nearCache.publish(this, key.substring(TOMCAT_SESSION_PREFIX.length()));
+					}
+					if (expiryIndex != null) {
+						SessionExpiryIndex.unindex(this, key.substring(TOMCAT_SESSION_PREFIX.length()));
+					}
+				}
+			});
+			return (Long) results.get(0);
 		}
+
+		return jedisExecute(key, true, new JedisCallback<Long>() {
+			public Long execute(Jedis jedis) {
+				String sessionId = key.substring(TOMCAT_SESSION_PREFIX.length());
+				return jedis.del(SafeEncoder.encode(key), SessionChunks.chunkKey(sessionId), SessionVersions.versionsKey(sessionId));
+			}
+		});
 	}
 
 	//	String jedisGet(String key) {
@@ -0,0 +1,122 @@
+package org.apache.catalina.session.ext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedisPool;
+
+/**
+ * ùredisӳ.
+ * <p>
+ * (serverlist,maxConn,minConn,socketTO)ͬRedisManagerһӳ,
+ * üһʹֹͣʱ;òͬRedisManagerжġԼmaxConnӳ,
+ * һӦռԼӳزӰͬһtomcatӦ.
+ *
+ * @author wjw
+ */
+public class RedisPoolRegistry {
+	private static final Log log = LogFactory.getLog(RedisPoolRegistry.class);
+
+	//->ӳ,RedisPoolRegistry.class
+	private static final Map<String, PoolEntry> POOLS = new HashMap<String, PoolEntry>();
+
+	/**
+	 * ȡõӳ,ûʱ,ü1.Ҫrelease().
+	 */
+	static synchronized PoolEntry acquire(List<JedisShardInfo> shards, int maxConn, int minConn) {
+		String key = createKey(shards, maxConn, minConn);
+		PoolEntry entry = POOLS.get(key);
+		if (entry == null) {
+			entry = new PoolEntry(key, createPoolConfig(maxConn, minConn), shards);
+			POOLS.put(key, entry);
+			log.info("RedisShards:" + shards.toString() + ",maxConn=" + maxConn + ",minConn=" + minConn + ",pools:" + POOLS.size());
+		}
+		entry.references++;
+		return entry;
+	}
+
+	/**
+	 * ü1,ûʹʱӳ
+	 */
+	static synchronized void release(PoolEntry entry) {
+		if (--entry.references > 0) {
+			return;
+		}
+		POOLS.remove(entry.key);
+		entry.destroy();
+	}
+
+	private static String createKey(List<JedisShardInfo> shards, int maxConn, int minConn) {
+		StringBuilder sb = new StringBuilder();
+		for (JedisShardInfo shard : shards) { //˳sessionĸredis,
+			sb.append(shard.getHost()).append(':').append(shard.getPort()).append(':').append(shard.getPassword()).append(':').append(shard.getTimeout())
+			    .append(',');
+		}
+		sb.append(maxConn).append(',').append(minConn);
+		return sb.toString();
+	}
+
+	private static JedisPoolConfig createPoolConfig(int maxConn, int minConn) {
+		JedisPoolConfig poolConfig = new JedisPoolConfig();
+		poolConfig.setMaxActive(maxConn);
+		poolConfig.setMinIdle(minConn);
+		int maxIdle = poolConfig.minIdle + 5;
+		if (maxIdle > poolConfig.maxActive) {
+			maxIdle = poolConfig.maxActive;
+		}
+		poolConfig.setMaxIdle(maxIdle);
+		poolConfig.setMaxWait(1000L);
+		poolConfig.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+		poolConfig.setTestOnBorrow(false);
+		poolConfig.setTestOnReturn(false);
+		poolConfig.setTestWhileIdle(true);
+		poolConfig.setMinEvictableIdleTimeMillis(1000L * 60L * 10L); //ж,ж೤ʱᱻ
+		poolConfig.setTimeBetweenEvictionRunsMillis(1000L * 30L); //߳30ִһ
+		poolConfig.setNumTestsPerEvictionRun(-1); //-1,ʾִ߳ʱ,еĿж
+		return poolConfig;
+	}
+
+	/**
+	 * һredisʱJedisPool,redisʱShardedJedisPool
+	 */
+	static final class PoolEntry {
+		final String key;
+		final JedisPool pool;
+		final ShardedJedisPool shardedPool;
+		int references = 0;
+
+		PoolEntry(String key, JedisPoolConfig poolConfig, List<JedisShardInfo> shards) {
+			this.key = key;
+			if (shards.size() == 1) {
+				JedisShardInfo shard = shards.get(0);
+				this.pool = new JedisPool(poolConfig, shard.getHost(), shard.getPort(), shard.getTimeout(), shard.getPassword());
+				this.shardedPool = null;
+				log.info("ʹ:JedisPool");
+			} else {
+				this.pool = null;
+				this.shardedPool = new ShardedJedisPool(poolConfig, shards);
+				log.info("ʹ:ShardedJedisPool");
+			}
+		}
+
+		void destroy() {
+			try {
+				if (pool != null) {
+					pool.destroy();
+				} else {
+					shardedPool.destroy();
+				}
+			} catch (Exception ex) {
+				log.error("error:", ex);
+			}
+		}
+	}
+}
@@ -1,11 +1,23 @@
 package org.apache.catalina.session.ext;
 
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.catalina.session.StandardSession;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 
+import redis.clients.jedis.BulkArgument;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.PipelineBlock;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 //imp tomcat StandardSession
 public class RedisSession extends StandardSession {
@@ -13,13 +25,34 @@ public class RedisSession extends StandardSession {
 
 	protected transient Log log = LogFactory.getLog(RedisSession.class);
 	protected transient RedisManager _manager;
-	protected transient PipelineBlock _expirePipeline = new RedisPipelineBlock(this) {
-		@Override
-		public void execute() {
-			_redisSession._manager.jedisHset(RedisManager.TOMCAT_SESSION_PREFIX + _redisSession.id, "__[creationTime]__", String.valueOf(System.currentTimeMillis()).getBytes());
-			_redisSession._manager.jedisExpire(RedisManager.TOMCAT_SESSION_PREFIX + _redisSession.id, _redisSession.maxInactiveInterval);
-		}
-	};
+
+	//дģʽ»ûдredis޸,_dirtyAttributes
+	protected transient Map<String, byte[]> _dirtyAttributes = new HashMap<String, byte[]>();
+	protected transient Set<String> _removedAttributes = new HashSet<String>();
+
+	//ڵһˢredissessionʱʱ
+	protected transient volatile long _lastExpireRefresh = 0;
+	//첽ģʽ»ûִеĹʱˢ
+	protected transient volatile boolean _touchPending = false;
+	//Ѿд(Ŷд)redisлֽ,ıûиƵredis
+	protected transient Map<String, Integer> _attributeSizes = new java.util.concurrent.ConcurrentHashMap<String, Integer>();
+	//ͬһsessionflushִ,ֹȡľ޸޸֮дredis
+	protected transient Object _flushLock = new Object();
+	//loadAttributes()ȡءûжȡ:name->лֵ,һgetAttribute()ʱŷл._lazyAttributes
+	protected transient Map<String, byte[]> _lazyAttributes = new HashMap<String, byte[]>();
+	//Ԫݵд
+	protected transient volatile int _metadataVersion = 0;
+	//ֿ鱣redisĿ,ǻɾʱɾԭĿ
+	protected transient Map<String, SessionChunks.Manifest> _chunkManifests = new java.util.concurrent.ConcurrentHashMap<String, SessionChunks.Manifest>();
+	//ͬ:Ѿͬsession汾źÿԵİ汾,_syncLock
+	protected transient long _syncedVersion = 0;
+	protected transient Map<String, Long> _attributeVersions = new java.util.concurrent.ConcurrentHashMap<String, Long>();
+	protected transient Object _syncLock = new Object();
+	//ûкredisͬ
+	protected transient volatile boolean _syncPending = true;
+
+	//loadAttribute()ķֵ,ʾredisû
+	private static final Object NOT_FOUND = new Object();
 
 	public RedisSession(RedisManager manager) {
 		super(manager);
@@ -38,16 +71,30 @@ public class RedisSession extends StandardSession {
 			log.info("id=" + this.id);
 		}
 		super.access();
+		_syncPending = true;
 
 		if (!_manager.isStarted()) {
 			return;
 		}
+		long now = System.currentTimeMillis();
+		if (!_manager.needExpireRefresh(this, now)) {
+			return;
+		}
+		if (_manager._persistExecutor != null) { //첽ģʽɺ̨߳ˢ
+			_touchPending = true;
+			_lastExpireRefresh = now;
+			_manager.markDirty(this);
+			return;
+		}
 		try {
-			if (_manager.jedisExpire(RedisManager.TOMCAT_SESSION_PREFIX + this.id, this.maxInactiveInterval) == 0) {
-				_manager.jedisPipelined(RedisManager.TOMCAT_SESSION_PREFIX + this.id, _expirePipeline);
-			}
+			_manager.jedisTouch(RedisManager.TOMCAT_SESSION_PREFIX + this.id, this.maxInactiveInterval, getMetadata());
+			_lastExpireRefresh = now;
 		} catch (Exception ex) {
 			log.error("error:", ex);
+			if (ex instanceof JedisConnectionException && _manager._breaker != null) { //redisָˢ
+				_touchPending = true;
+				_manager.markResync(this);
+			}
 		}
 	}
 
@@ -55,7 +102,7 @@ public class RedisSession extends StandardSession {
 	public Object getAttribute(String name) {
 		Object value = super.getAttribute(name);
 
-		if (name.startsWith("javax.zkoss.zk.ui.Session")) {
+		if (!_manager.isReplicated(name)) { //ֻڱص
 			return value;
 		}
 
@@ -64,17 +111,18 @@ public class RedisSession extends StandardSession {
 		}
 		try {
 			if (_manager.stickySessionEnabled) {
-				if (value == null) {
-					byte[] bytesValue = _manager.jedisHget(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name);
-					if (bytesValue == null) {
-						return value;
+				if (value == null && !isPendingWrite(name)) { //ɾûдredisԲٴredisȡ
+					Object lazyValue = materialize(name);
+					if (lazyValue != NOT_FOUND) {
+						return lazyValue;
 					}
 
-					if (_manager.debugEnabled) {
-						log.info("id=" + this.id + ",name=" + name + ",strValue=" + new String(bytesValue, Protocol.CHARSET));
+					Object remoteValue = loadAttribute(name, true);
+					if (remoteValue == NOT_FOUND) {
+						return value;
 					}
 
-					value = _manager.deserialize(bytesValue);
+					value = remoteValue;
 					super.setAttribute(name, value, false); //ӵصattributes.
 
 					return value;
@@ -82,16 +130,32 @@ public class RedisSession extends StandardSession {
 					return value;
 				}
 			} else { //stickySessionEnabled,ôÿζҪredisȡֵ.
-				byte[] bytesValue = _manager.jedisHget(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name);
-				if (bytesValue == null) {
+				if (isPendingWrite(name)) { //дģʽ»ûдredis޸,ԱΪ׼
 					return value;
 				}
+				if (_manager._versions != null) {
+					return getSyncedAttribute(name, value);
+				}
 
-				if (_manager.debugEnabled) {
-					log.info("id=" + this.id + ",name=" + name + ",strValue=" + new String(bytesValue, Protocol.CHARSET));
+				SessionNearCache nearCache = _manager._nearCache;
+				long stamp = 0;
+				if (nearCache != null) {
+					Object cachedValue = nearCache.get(this.id, name);
+					if (cachedValue != null) {
+						return cachedValue;
+					}
+					stamp = nearCache.stamp(this.id, name);
+				}
+
+				Object remoteValue = loadAttribute(name, false);
+				if (remoteValue == NOT_FOUND) {
+					return value;
 				}
 
-				return _manager.deserialize(bytesValue);
+				if (nearCache != null) {
+					nearCache.put(this.id, name, remoteValue, stamp);
+				}
+				return remoteValue;
 			}
 		} catch (Exception ex) {
 			log.error("error:name=" + name + ";value=" + value, ex);
@@ -99,15 +163,186 @@ public class RedisSession extends StandardSession {
 		}
 	}
 
+	/**
+	 * ͬ:ÿһζȡʱȡرĽڵ޸Ĺ,֮󶼴ӱضȡ
+	 */
+	private Object getSyncedAttribute(String name, Object value) throws Exception {
+		if (_syncPending) {
+			_syncPending = false;
+			syncDelta();
+		}
+		Object localValue = materialize(name);
+		if (localValue != NOT_FOUND) {
+			return localValue;
+		}
+		if (_attributeVersions.containsKey(name)) { //а汾ŵûֵ,Ѿɾ
+			return null;
+		}
+
+		//ûа汾ŵ(֮ͬǰд),ÿζredisȡ
+		Object remoteValue = loadAttribute(name, false);
+		return (remoteValue == NOT_FOUND) ? value : remoteValue;
+	}
+
+	/**
+	 * һredis汾_syncedVersion֮ʲô,ֻȡذ汾źͱزͬ.
+	 * ȡصֵȷŵ_lazyAttributes,ȡʱŷл.
+	 */
+	private void syncDelta() {
+		synchronized (_syncLock) {
+			SessionVersions.Delta delta = _manager.jedisSyncVersions(this.id, _syncedVersion);
+			if (delta.attributeVersions == null) {
+				_manager._versions.recordCheck(0);
+				return;
+			}
+
+			java.util.List<String> changed = new java.util.ArrayList<String>();
+			for (Map.Entry<String, Long> entry : delta.attributeVersions.entrySet()) {
+				if (!entry.getValue().equals(_attributeVersions.get(entry.getKey())) && !isPendingWrite(entry.getKey())) {
+					changed.add(entry.getKey());
+				}
+			}
+			for (String name : _attributeVersions.keySet()) { //԰汾ŵkey
+				if (!delta.attributeVersions.containsKey(name) && !isPendingWrite(name)) {
+					changed.add(name);
+				}
+			}
+			if (!changed.isEmpty()) {
+				java.util.List<byte[]> values = _manager.jedisHmget(this.id, changed);
+				for (int i = 0; i < changed.size(); i++) {
+					String name = changed.get(i);
+					byte[] bytesValue = values.get(i);
+					synchronized (_lazyAttributes) {
+						attributes.remove(name); //ĽڵѾ¼,ֻ滻ֵ
+						if (bytesValue == null) {
+							_lazyAttributes.remove(name);
+							_attributeSizes.remove(name);
+						} else {
+							_lazyAttributes.put(name, bytesValue);
+							_attributeSizes.put(name, bytesValue.length);
+						}
+					}
+					Long version = delta.attributeVersions.get(name);
+					if (version == null) {
+						_attributeVersions.remove(name);
+					} else {
+						_attributeVersions.put(name, version);
+					}
+				}
+			}
+			_syncedVersion = delta.version;
+			_manager._versions.recordCheck(changed.size());
+		}
+	}
+
+	/**
+	 * ڵдµİ汾.мûбĽڵдʱ,sessionİ汾Ҳǰ
+	 */
+	void advanceVersions(SessionVersions.Stamp stamp) {
+		synchronized (_syncLock) {
+			long version = stamp.getVersion();
+			if (version == _syncedVersion + 1) {
+				_syncedVersion = version;
+			}
+			for (int i = 0; i < stamp.names.length; i++) {
+				_attributeVersions.put(stamp.names[i], stamp.getAttributeVersion(i));
+			}
+		}
+	}
+
+	/**
+	 * redisȡֵл.ʽȡʱֱӴredisӵ뻺л,ֵСbyte[].
+	 * 
+	 * @param recordSize
+	 *          Ƿ¼лֽ
+	 * @return redisûʱNOT_FOUND
+	 */
+	private Object loadAttribute(String name, boolean recordSize) throws Exception {
+		String key = RedisManager.TOMCAT_SESSION_PREFIX + this.id;
+		if (_manager.isStreamingRead()) {
+			RedisManager.AttributeReader reader = _manager.new AttributeReader();
+			try {
+				Object remoteValue = _manager.jedisHget(key, name, reader);
+				if (reader.length < 0) {
+					return NOT_FOUND;
+				}
+				if (recordSize) {
+					_attributeSizes.put(name, sizeOf(remoteValue, reader.length));
+				}
+				return loadChunks(name, remoteValue);
+			} catch (JedisDataException ex) {
+				if (!SharedClassResolver.isUnresolved(ex)) {
+					throw ex;
+				}
+				//бػʶ,ȡֵ,黹Ӻٲ
+			}
+		}
+
+		byte[] bytesValue = _manager.jedisHget(key, name);
+		if (bytesValue == null) {
+			return NOT_FOUND;
+		}
+		if (_manager.debugEnabled) {
+			log.info("id=" + this.id + ",name=" + name + ",strValue=" + new String(bytesValue, Protocol.CHARSET));
+		}
+		Object remoteValue = _manager.deserialize(bytesValue);
+		if (recordSize) {
+			_attributeSizes.put(name, sizeOf(remoteValue, bytesValue.length));
+		}
+		return loadChunks(name, remoteValue);
+	}
+
+	/**
+	 * redisֵǷֿ鱣嵥ʱ,ȡеĿٷл
+	 */
+	private Object loadChunks(String name, Object value) throws Exception {
+		if (!(value instanceof SessionChunks.Manifest)) {
+			return value;
+		}
+		SessionChunks.Manifest manifest = (SessionChunks.Manifest) value;
+		_chunkManifests.put(name, manifest);
+		return _manager.loadChunked(this.id, name, manifest);
+	}
+
+	private static int sizeOf(Object value, int length) {
+		return (value instanceof SessionChunks.Manifest) ? ((SessionChunks.Manifest) value).length : length;
+	}
+
+	/**
+	 * лloadAttributes()ȡصֵ,ŵصattributes.
+	 * 
+	 * @return ûԵлֵʱNOT_FOUND(̸߳շлʱŵattributesֵ)
+	 */
+	private Object materialize(String name) {
+		synchronized (_lazyAttributes) {
+			byte[] bytesValue = _lazyAttributes.remove(name);
+			if (bytesValue == null) {
+				Object value = attributes.get(name);
+				return (value == null) ? NOT_FOUND : value;
+			}
+			try {
+				Object value = loadChunks(name, _manager.deserialize(bytesValue));
+				if (value != null) {
+					super.setAttribute(name, value, false); //ӵصattributes.
+				}
+				return value;
+			} catch (Exception ex) {
+				log.error("error:name=" + name, ex);
+				return NOT_FOUND;
+			}
+		}
+	}
+
 	@Override
 	public void setAttribute(String name, Object value) {
+		materialize(name); //ȡֵ,ʱܴvalueUnboundattributeReplaced¼
 		super.setAttribute(name, value);
 
 		if (value == null) {
 			return;
 		}
 
-		if (name.startsWith("javax.zkoss.zk.ui.Session")) {
+		if (!_manager.isReplicated(name)) { //ֻڱص
 			return;
 		}
 
@@ -115,13 +350,97 @@ public class RedisSession extends StandardSession {
 			return;
 		}
 		try {
-			byte[] bytesValue = _manager.serialize(value);
-			if (_manager.debugEnabled) {
-				log.info("id=" + this.id + ",name=" + name + ",strValue=" + new String(bytesValue, Protocol.CHARSET));
+			SessionTelemetry telemetry = _manager._telemetry;
+			long start = (telemetry != null && telemetry.sample()) ? System.nanoTime() : 0;
+			long serializeNanos;
+			int size;
+			if (!_manager.isWriteBehind() && _manager.isStreamingWrite()) { //ֱлredisӵ
+				BulkArgument bulkValue = _manager.serializeBulk(value);
+				serializeNanos = System.nanoTime() - start;
+				size = bulkValue.length();
+				if (_manager.isChunked(size)) {
+					hsetChunked(name, RedisManager.toBytes(bulkValue));
+				} else {
+					_manager.jedisHset(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name, bulkValue);
+					removeChunks(name);
+				}
+			} else {
+				byte[] bytesValue = _manager.serialize(value);
+				serializeNanos = System.nanoTime() - start;
+				if (_manager.debugEnabled) {
+					log.info("id=" + this.id + ",name=" + name + ",strValue=" + new String(bytesValue, Protocol.CHARSET));
+				}
+				if (_manager.isWriteBehind()) {
+					synchronized (_dirtyAttributes) {
+						_dirtyAttributes.put(name, bytesValue);
+						_removedAttributes.remove(name);
+					}
+					_manager.markDirty(this);
+				} else if (_manager.isChunked(bytesValue.length)) {
+					hsetChunked(name, bytesValue);
+				} else {
+					_manager.jedisHset(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name, bytesValue);
+					removeChunks(name);
+				}
+				size = bytesValue.length;
+			}
+			if (!_manager.isWriteBehind() && _manager._breaker != null) { //۶ڼµľֵд
+				synchronized (_dirtyAttributes) {
+					_dirtyAttributes.remove(name);
+					_removedAttributes.remove(name);
+				}
+			}
+			_attributeSizes.put(name, size);
+			if (start != 0) {
+				telemetry.record(name, size, serializeNanos);
+			}
+			if (_manager._nearCache != null) {
+				_manager._nearCache.invalidate(this.id, name);
+				_manager._nearCache.put(this.id, name, value, _manager._nearCache.stamp(this.id, name));
 			}
-			_manager.jedisHset(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name, bytesValue);
 		} catch (Exception ex) {
 			log.error("error:name=" + name + ";value=" + value, ex);
+			if (ex instanceof JedisConnectionException) {
+				deferAttribute(name, value);
+			}
+		}
+	}
+
+	/**
+	 * дֱͨģʽ·ֿдֵ
+	 */
+	private void hsetChunked(String name, byte[] bytesValue) {
+		SessionChunks.Manifest manifest = _manager.jedisHsetChunked(this.id, name, bytesValue, _chunkManifests.get(name), this.maxInactiveInterval);
+		_chunkManifests.put(name, manifest);
+	}
+
+	/**
+	 * дֱͨģʽɾԭĿ(ԭǷֿ鱣ʱ)
+	 */
+	private void removeChunks(String name) {
+		SessionChunks.Manifest old = _chunkManifests.remove(name);
+		if (old != null) {
+			_manager.jedisRemoveChunks(this.id, name, old);
+		}
+	}
+
+	/**
+	 * ۶ʱ,ûдredisԷŵд޸,redisָRedisManagerд
+	 */
+	private void deferAttribute(String name, Object value) {
+		if (_manager._breaker == null) {
+			return;
+		}
+		try {
+			byte[] bytesValue = _manager.serialize(value);
+			synchronized (_dirtyAttributes) {
+				_dirtyAttributes.put(name, bytesValue);
+				_removedAttributes.remove(name);
+			}
+			_attributeSizes.put(name, bytesValue.length);
+			_manager.markResync(this);
+		} catch (Exception ex) {
+			log.error("error:name=" + name, ex);
 		}
 	}
 
@@ -130,15 +449,46 @@ public class RedisSession extends StandardSession {
 		if (_manager.debugEnabled) {
 			log.info("id=" + this.id + ",name=" + name + ",notify=" + notify);
 		}
+		if (notify) {
+			materialize(name); //ɾ¼Ҫõֵ
+		} else {
+			synchronized (_lazyAttributes) {
+				_lazyAttributes.remove(name);
+			}
+		}
 		super.removeAttributeInternal(name, notify);
+		_attributeSizes.remove(name);
 
-		if (!_manager.isStarted()) {
+		if (!_manager.isStarted() || !_manager.isReplicated(name)) {
 			return;
 		}
 		try {
-			_manager.jedisHdel(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name);
+			if (_manager.isWriteBehind()) {
+				synchronized (_dirtyAttributes) {
+					_dirtyAttributes.remove(name);
+					_removedAttributes.add(name);
+				}
+				_manager.markDirty(this);
+			} else {
+				if (_manager._breaker != null) {
+					synchronized (_dirtyAttributes) {
+						_dirtyAttributes.remove(name);
+					}
+				}
+				_manager.jedisHdel(RedisManager.TOMCAT_SESSION_PREFIX + this.id, name);
+				removeChunks(name);
+			}
+			if (_manager._nearCache != null) {
+				_manager._nearCache.invalidate(this.id, name);
+			}
 		} catch (Exception ex) {
 			log.error("error:", ex);
+			if (ex instanceof JedisConnectionException && _manager._breaker != null) { //redisָɾ
+				synchronized (_dirtyAttributes) {
+					_removedAttributes.add(name);
+				}
+				_manager.markResync(this);
+			}
 		}
 	}
 
@@ -148,6 +498,19 @@ public class RedisSession extends StandardSession {
 			log.info("id=" + this.id + ",notify=" + notify);
 		}
 		super.expire(notify); //expireͻյǰsession
+		synchronized (_lazyAttributes) {
+			_lazyAttributes.clear();
+		}
+		_chunkManifests.clear();
+		_attributeVersions.clear();
+		synchronized (_dirtyAttributes) {
+			_touchPending = false; //첽flush()ˢ¹ʱ,TOUCH_SCRIPT´session
+			_dirtyAttributes.clear();
+			_removedAttributes.clear();
+		}
+		if (_manager._nearCache != null) {
+			_manager._nearCache.invalidate(this.id);
+		}
 
 		if (!_manager.isStarted()) {
 			return;
@@ -163,6 +526,328 @@ public class RedisSession extends StandardSession {
 		this.id = id;
 	}
 
+	/**
+	 * HGETALLȡصhashһ䱾ص.
+	 * ֵлʽ_lazyAttributes,һgetAttribute()ʱŷл;
+	 * ûжԲᱻ޸,ҲͲҪлдredis.
+	 * 
+	 * @param hash
+	 *          field->лֵ
+	 */
+	void loadAttributes(Map<byte[], byte[]> hash) {
+		SessionMetadata metadata = null;
+		for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+			String name = SafeEncoder.encode(entry.getKey());
+			if (name.equals(SessionMetadata.FIELD)) {
+				metadata = SessionMetadata.decode(entry.getValue());
+				continue;
+			}
+			if (name.equals(SessionVersions.FIELD)) {
+				continue;
+			}
+			if (name.equals(RedisManager.CREATION_TIME_FIELD)) { //ǰİ汾дĴʱ
+				try {
+					this.creationTime = Long.parseLong(SafeEncoder.encode(entry.getValue()));
+				} catch (NumberFormatException ex) {
+				}
+				continue;
+			}
+
+			synchronized (_lazyAttributes) {
+				_lazyAttributes.put(name, entry.getValue());
+			}
+			_attributeSizes.put(name, entry.getValue().length);
+		}
+		if (metadata != null) {
+			loadMetadata(metadata);
+		}
+	}
+
+	/**
+	 * redisԪݻָʱ䡢ʱmaxInactiveInterval.
+	 * ͻ˴sessionId,sessionµ,FLAG_NEW.
+	 */
+	void loadMetadata(SessionMetadata metadata) {
+		this.creationTime = metadata.creationTime;
+		this.lastAccessedTime = metadata.lastAccessedTime;
+		this.thisAccessedTime = metadata.lastAccessedTime;
+		this.maxInactiveInterval = metadata.maxInactiveInterval;
+		this._metadataVersion = metadata.version;
+	}
+
+	/**
+	 * Ԫ,ÿεд1
+	 */
+	byte[] getMetadata() {
+		byte flags = this.isNew ? SessionMetadata.FLAG_NEW : 0;
+		return new SessionMetadata(this.creationTime, this.thisAccessedTime, this.maxInactiveInterval, ++_metadataVersion, flags).encode();
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		Enumeration<String> names = super.getAttributeNames();
+		synchronized (_lazyAttributes) {
+			if (_lazyAttributes.isEmpty()) {
+				return names;
+			}
+			Set<String> allNames = new HashSet<String>(Collections.list(names));
+			allNames.addAll(_lazyAttributes.keySet());
+			return Collections.enumeration(allNames);
+		}
+	}
+
+	@Override
+	protected String[] keys() {
+		synchronized (_lazyAttributes) {
+			if (_lazyAttributes.isEmpty()) {
+				return super.keys();
+			}
+			Set<String> allNames = new HashSet<String>(attributes.keySet());
+			allNames.addAll(_lazyAttributes.keySet());
+			return allNames.toArray(new String[allNames.size()]);
+		}
+	}
+
+	/**
+	 * лֽ(ֵ)
+	 */
+	long getEstimatedSize() {
+		long size = 0;
+		for (Integer attributeSize : _attributeSizes.values()) {
+			size += attributeSize;
+		}
+		return size;
+	}
+
+	/**
+	 * ǷֻڱءûиƵredis.sessionܴӱƳ,ЩԻᶪʧ.
+	 */
+	boolean hasLocalOnlyAttributes() {
+		for (String name : keys()) {
+			if (!_attributeSizes.containsKey(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Ƿûдredis޸
+	 */
+	boolean isDirty() {
+		synchronized (_dirtyAttributes) {
+			return _touchPending || !_dirtyAttributes.isEmpty() || !_removedAttributes.isEmpty();
+		}
+	}
+
+	/**
+	 * Ƿлûдredis޸
+	 */
+	boolean isPendingWrite(String name) {
+		synchronized (_dirtyAttributes) {
+			return _dirtyAttributes.containsKey(name) || _removedAttributes.contains(name);
+		}
+	}
+
+	/**
+	 * д/첽ģʽ»۵޸һpipeline(HMSET/HDEL/EXPIRE)дsessionڵredis,
+	 * 첽ģʽ»ִбƳٵĹʱˢ.
+	 * дʧʱ,ûбµ޸ĻŻȥ,һflushʱ.
+	 */
+	void flush() {
+		synchronized (_flushLock) {
+			if (!_manager.isWritable()) { //ӳѾͷ,޸session
+				return;
+			}
+			if (!isValidInternal() || this.expiring) { //ѾʧЧ,дredis´session
+				synchronized (_dirtyAttributes) {
+					_touchPending = false;
+					_dirtyAttributes.clear();
+					_removedAttributes.clear();
+				}
+				return;
+			}
+			final boolean touch = _touchPending;
+			final Map<String, byte[]> dirtyAttributes;
+			final Set<String> removedAttributes;
+			synchronized (_dirtyAttributes) {
+				if (_dirtyAttributes.isEmpty() && _removedAttributes.isEmpty() && !touch) {
+					return;
+				}
+				_touchPending = false;
+				dirtyAttributes = new HashMap<String, byte[]>(_dirtyAttributes);
+				removedAttributes = new HashSet<String>(_removedAttributes);
+				_dirtyAttributes.clear();
+				_removedAttributes.clear();
+			}
+
+			if (_manager.debugEnabled) {
+				log.info("id=" + this.id + ",dirty=" + dirtyAttributes.keySet() + ",removed=" + removedAttributes + ",touch=" + touch);
+			}
+			boolean written = false;
+			try {
+				if (dirtyAttributes.isEmpty() && removedAttributes.isEmpty()) {
+					_manager.jedisTouch(RedisManager.TOMCAT_SESSION_PREFIX + this.id, this.maxInactiveInterval, getMetadata());
+				} else {
+					//޸ʱ,Ԫݺ͹ʱͬһpipelineд
+					final SessionVersions.Stamp[] stamp = new SessionVersions.Stamp[1];
+					_manager.jedisPipelined(RedisManager.TOMCAT_SESSION_PREFIX + this.id, new RedisPipelineBlock(this) {
+						@Override
+						public void execute() {
+							stamp[0] = _redisSession.writeTo(this, dirtyAttributes, removedAttributes);
+						}
+					});
+					_manager.applyVersions(stamp[0]);
+				}
+				written = true;
+			} catch (Exception ex) {
+				log.error("error:", ex);
+			} finally {
+				if (!written) { //ȡ޸Ҫôдredis,ҪôŻȥ
+					restore(dirtyAttributes, removedAttributes, touch);
+					_manager.markResync(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ûдredis޸ķŻȥ,ȡ֮޸
+	 */
+	private void restore(Map<String, byte[]> dirtyAttributes, Set<String> removedAttributes, boolean touch) {
+		synchronized (_dirtyAttributes) {
+			if (touch) {
+				_touchPending = true;
+			}
+			for (Map.Entry<String, byte[]> entry : dirtyAttributes.entrySet()) {
+				if (!_dirtyAttributes.containsKey(entry.getKey()) && !_removedAttributes.contains(entry.getKey())) {
+					_dirtyAttributes.put(entry.getKey(), entry.getValue());
+				}
+			}
+			for (String name : removedAttributes) {
+				if (!_dirtyAttributes.containsKey(name)) {
+					_removedAttributes.add(name);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * ֹͣǰpipelineд뱾ص״̬:ûд޸ġԪݺ͹ʱ.
+	 * ճģʽ»лѾл,ֱ޸ԶûеsetAttribute()ĸĶҲᶪʧ;
+	 * ճģʽ±ĽڵѾд˸µֵ,ֻд뱾ص޸.
+	 * ص޸Ĳ:pipelineʧʱֹ̻ͣҪsessionд뱾ļ.
+	 * 
+	 * @return дԸ
+	 */
+	int drainTo(Pipeline pipeline) {
+		Map<String, byte[]> dirtyAttributes;
+		Set<String> removedAttributes;
+		synchronized (_dirtyAttributes) {
+			dirtyAttributes = new HashMap<String, byte[]>(_dirtyAttributes);
+			removedAttributes = new HashSet<String>(_removedAttributes);
+		}
+		if (_manager.stickySessionEnabled) {
+			serializeAttributes(dirtyAttributes, removedAttributes);
+		}
+		writeTo(pipeline, dirtyAttributes, removedAttributes);
+		return dirtyAttributes.size() + removedAttributes.size();
+	}
+
+	/**
+	 * ճģʽ´ӱƳǰ:лѾлԲΪ޸,
+	 * ֱ޸ԶûеsetAttribute()ĸĶڽflush()дredis.
+	 */
+	void markAttributesDirty() {
+		if (!_manager.stickySessionEnabled) {
+			return;
+		}
+		Map<String, byte[]> serialized = new HashMap<String, byte[]>();
+		synchronized (_dirtyAttributes) {
+			serializeAttributes(serialized, _removedAttributes);
+			_dirtyAttributes.putAll(serialized);
+		}
+	}
+
+	/**
+	 * ѾлġƵredisлserialized,removedAttributes
+	 */
+	private void serializeAttributes(Map<String, byte[]> serialized, Set<String> removedAttributes) {
+		for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+			String name = entry.getKey();
+			if (!_manager.isReplicated(name) || removedAttributes.contains(name)) {
+				continue;
+			}
+			try {
+				serialized.put(name, _manager.serialize(entry.getValue()));
+			} catch (Exception ex) {
+				log.error("error:id=" + this.id + ",name=" + name, ex);
+			}
+		}
+	}
+
+	/**
+	 * pipelineд޸ġԪݺ͹ʱ.
+	 * û޸ʱ(drainTo()дֻˢ˹ʱsession)ʧЧϢ,ҲӰ汾.
+	 * 
+	 * @return ͬ޸ʱȡ°汾,null
+	 */
+	SessionVersions.Stamp writeTo(Pipeline pipeline, Map<String, byte[]> dirtyAttributes, Set<String> removedAttributes) {
+		byte[] bytesKey = SafeEncoder.encode(RedisManager.TOMCAT_SESSION_PREFIX + this.id);
+		byte[] chunkKey = SessionChunks.chunkKey(this.id);
+		Map<String, SessionChunks.Manifest> chunkManifests = _chunkManifests;
+		if (!dirtyAttributes.isEmpty()) {
+			Map<byte[], byte[]> hash = new HashMap<byte[], byte[]>(dirtyAttributes.size());
+			Map<String, SessionChunks.Manifest> oldManifests = new HashMap<String, SessionChunks.Manifest>();
+			for (Map.Entry<String, byte[]> entry : dirtyAttributes.entrySet()) {
+				String name = entry.getKey();
+				byte[] bytesValue = entry.getValue();
+				SessionChunks.Manifest old = chunkManifests.remove(name);
+				if (old != null) {
+					oldManifests.put(name, old);
+				}
+				if (_manager.isChunked(bytesValue.length)) {
+					bytesValue = _manager.writeChunked(pipeline, this.id, name, bytesValue, old, this.maxInactiveInterval);
+					chunkManifests.put(name, SessionChunks.decode(bytesValue));
+				}
+				hash.put(SafeEncoder.encode(name), bytesValue);
+			}
+			pipeline.hmset(bytesKey, hash);
+			for (Map.Entry<String, SessionChunks.Manifest> entry : oldManifests.entrySet()) { //嵥滻֮ɾһĿ
+				SessionChunks.remove(pipeline, chunkKey, entry.getKey(), entry.getValue());
+			}
+		}
+		for (String name : removedAttributes) {
+			pipeline.hdel(bytesKey, SafeEncoder.encode(name));
+			SessionChunks.Manifest old = chunkManifests.remove(name);
+			if (old != null) {
+				SessionChunks.remove(pipeline, chunkKey, name, old);
+			}
+		}
+		pipeline.hset(bytesKey, SessionMetadata.FIELD_BYTES, getMetadata());
+		if (this.maxInactiveInterval > 0) {
+			int ttl = _manager.expireSeconds(this.maxInactiveInterval);
+			pipeline.expire(bytesKey, ttl);
+			pipeline.expire(chunkKey, ttl);
+			pipeline.expire(SessionVersions.versionsKey(this.id), ttl);
+		} else {
+			pipeline.persist(bytesKey);
+			pipeline.persist(chunkKey);
+			pipeline.persist(SessionVersions.versionsKey(this.id));
+		}
+		_manager.indexExpiry(pipeline, this.id, this.maxInactiveInterval);
+		_lastExpireRefresh = System.currentTimeMillis();
+
+		if (dirtyAttributes.isEmpty() && removedAttributes.isEmpty()) { //յʧЧϢڵʧЧsession
+			return null;
+		}
+		java.util.List<String> names = new java.util.ArrayList<String>(dirtyAttributes.keySet());
+		names.addAll(removedAttributes);
+		_manager.publishInvalidation(pipeline, this.id, names.toArray(new String[names.size()]));
+		return _manager.recordVersions(pipeline, this.id, names.toArray(new String[names.size()]));
+	}
+
 	private static abstract class RedisPipelineBlock extends PipelineBlock {
 		RedisSession _redisSession;
 
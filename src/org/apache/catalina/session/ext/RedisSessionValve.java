@@ -0,0 +1,36 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+/**
+ * дģʽRedisManagerԶװContextPipeline.
+ * ʱ޸Ĺsessionһpipelineдredis.
+ * 
+ * @author wjw
+ */
+public class RedisSessionValve extends ValveBase {
+	private final RedisManager _manager;
+
+	public RedisSessionValve(RedisManager manager) {
+		super(true);
+		this._manager = manager;
+	}
+
+	@Override
+	public void invoke(Request request, Response response) throws IOException, ServletException {
+		boolean outermost = _manager.beginRequest();
+		try {
+			getNext().invoke(request, response);
+		} finally {
+			if (outermost) {
+				_manager.endRequest();
+			}
+		}
+	}
+}
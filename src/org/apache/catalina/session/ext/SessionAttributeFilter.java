@@ -0,0 +1,171 @@
+package org.apache.catalina.session.ext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * ЩsessionԸƵredis.
+ * <p>
+ * replicatedlocalǶŷָĹ:
+ * <ul>
+ * <li>name:name</li>
+ * <li>prefix*:prefixͷ</li>
+ * <li>*Ĺ(*.cache):*ƥַ</li>
+ * </ul>
+ * replicatedΪʱԶ;ƥreplicatedҲƥlocalʱŸ.
+ * ֻڱصԲᱻл,Ҳдredis.
+ * ȷHashSet,ǰ׺ֵƥ,ֻд*ʱʽ;
+ * ÿжϽ,ֻ֮Ҫһhash.
+ *
+ * @author wjw
+ */
+public class SessionAttributeFilter {
+	//жϽ,ٻ,ֹǶ̬ɵʱ
+	private static final int MAX_CACHED = 10000;
+
+	private final Rules _replicated;
+	private final Rules _local;
+	private final ConcurrentHashMap<String, Boolean> _decisions = new ConcurrentHashMap<String, Boolean>();
+
+	public SessionAttributeFilter(String replicated, String local) {
+		this._replicated = new Rules(replicated);
+		this._local = new Rules(local);
+	}
+
+	/**
+	 * @return ǷƵredis
+	 */
+	boolean isReplicated(String name) {
+		Boolean decision = _decisions.get(name);
+		if (decision != null) {
+			return decision;
+		}
+
+		boolean replicated = (_replicated.isEmpty() || _replicated.matches(name)) && !_local.matches(name);
+		if (_decisions.size() < MAX_CACHED) {
+			_decisions.put(name, replicated);
+		}
+		return replicated;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionAttributeFilter{replicated=" + _replicated + ",local=" + _local + '}';
+	}
+
+	/**
+	 * һ:ȷ,ǰ׺ֵ,ʽ
+	 */
+	private static final class Rules {
+		private final Set<String> _names = new HashSet<String>();
+		private final TrieNode _prefixes = new TrieNode();
+		private final List<Pattern> _patterns = new ArrayList<Pattern>();
+		private final String _source;
+		private boolean _empty = true;
+
+		Rules(String rules) {
+			this._source = rules;
+			if (rules == null) {
+				return;
+			}
+			for (String rule : rules.split(",")) {
+				rule = rule.trim();
+				if (rule.length() == 0) {
+					continue;
+				}
+				_empty = false;
+				int star = rule.indexOf('*');
+				if (star < 0) {
+					_names.add(rule);
+				} else if (star == rule.length() - 1) {
+					_prefixes.add(rule.substring(0, star));
+				} else {
+					_patterns.add(compile(rule));
+				}
+			}
+		}
+
+		private static Pattern compile(String rule) {
+			StringBuilder regex = new StringBuilder();
+			String[] parts = rule.split("\\*", -1);
+			for (int i = 0; i < parts.length; i++) {
+				if (i > 0) {
+					regex.append(".*");
+				}
+				if (parts[i].length() > 0) {
+					regex.append(Pattern.quote(parts[i]));
+				}
+			}
+			return Pattern.compile(regex.toString(), Pattern.DOTALL);
+		}
+
+		boolean isEmpty() {
+			return _empty;
+		}
+
+		boolean matches(String name) {
+			if (_empty) {
+				return false;
+			}
+			if (_names.contains(name) || _prefixes.matchesPrefixOf(name)) {
+				return true;
+			}
+			for (Pattern pattern : _patterns) {
+				if (pattern.matcher(name).matches()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return _source;
+		}
+	}
+
+	private static final class TrieNode {
+		private Map<Character, TrieNode> _children = null;
+		private boolean _terminal = false;
+
+		void add(String prefix) {
+			TrieNode node = this;
+			for (int i = 0; i < prefix.length(); i++) {
+				if (node._children == null) {
+					node._children = new HashMap<Character, TrieNode>();
+				}
+				Character ch = prefix.charAt(i);
+				TrieNode child = node._children.get(ch);
+				if (child == null) {
+					child = new TrieNode();
+					node._children.put(ch, child);
+				}
+				node = child;
+			}
+			node._terminal = true;
+		}
+
+		/**
+		 * @return nameǷĳǰ׺ͷ
+		 */
+		boolean matchesPrefixOf(String name) {
+			TrieNode node = this;
+			for (int i = 0; !node._terminal; i++) {
+				if (i == name.length() || node._children == null) {
+					return false;
+				}
+				node = node._children.get(name.charAt(i));
+				if (node == null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
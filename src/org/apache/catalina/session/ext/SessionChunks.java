@@ -0,0 +1,197 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+
+import redis.clients.jedis.BulkArgument;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.RedisOutputStream;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * ֵķֿ洢.
+ * <p>
+ * л(ѹ)󳬹chunkSizeֽڵֳֵchunkSizeСĿ,hash "TS:sessionId:chunks",
+ * field"##";session hashԵֵ嵥:
+ *
+ * <pre>
+ * 0xC5 0x2F ܳ(4ֽ) (4ֽ) (4ֽ)
+ * </pre>
+ *
+ * ÿдһµ,еĿ嵥ͬһpipeline,дһĿ,滻嵥,ɾһĿ.
+ * ȡõ嵥ָֻһ,дĿƴһ;ɵ嵥ָĿѾɾʱȡʧ,ǵõֵ.
+ * ȡʱÿpipelineȡfetchBatch,һredisഫchunkSizeֽ,ΪһܴHSET/HGETredis.
+ * ֿkeysessionkeyѡredis,ʱsessionkeyһˢ,һɾ.
+ * ڵ֪һ嵥ʱɾһĿ,ֿkey.
+ *
+ * @author wjw
+ */
+public class SessionChunks {
+	static final String CHUNKS_SUFFIX = ":chunks";
+
+	private static final byte MAGIC0 = SharedClassResolver.RESERVED_HEADER;
+	private static final byte MAGIC1 = (byte) 0x2F;
+	static final int MANIFEST_LENGTH = 14;
+
+	private static final java.util.Random GENERATIONS = new java.util.Random();
+
+	private final int _chunkSize;
+	private final int _fetchBatch;
+
+	public SessionChunks(int chunkSize, int fetchBatch) {
+		this._chunkSize = chunkSize;
+		this._fetchBatch = fetchBatch;
+	}
+
+	/**
+	 * лlengthֽڵֵǷҪֿ鱣
+	 */
+	boolean isChunked(int length) {
+		return length > _chunkSize;
+	}
+
+	int getFetchBatch() {
+		return _fetchBatch;
+	}
+
+	/**
+	 * @param header
+	 *          ݵǰֽ
+	 * @param length
+	 *          ݵĳ
+	 */
+	static boolean isManifest(byte[] header, int length) {
+		return length == MANIFEST_LENGTH && header[0] == MAGIC0 && header[1] == MAGIC1;
+	}
+
+	static boolean isManifest(byte[] data) {
+		return isManifest(data, data.length);
+	}
+
+	static Manifest decode(byte[] data) {
+		return new Manifest(readInt(data, 2), readInt(data, 6), readInt(data, 10));
+	}
+
+	static byte[] chunkKey(String sessionId) {
+		return SafeEncoder.encode(RedisManager.TOMCAT_SESSION_PREFIX + sessionId + CHUNKS_SUFFIX);
+	}
+
+	static byte[] chunkField(String name, int generation, int index) {
+		return SafeEncoder.encode(name + "#" + generation + "#" + index);
+	}
+
+	/**
+	 * pipelineµĴдdataп.ͬһpipelineд嵥,remove()ɾһĿ
+	 *
+	 * @param old
+	 *          һ嵥,֪ʱnull
+	 * @return Ҫsession hash嵥
+	 */
+	byte[] write(Pipeline pipeline, byte[] chunkKey, String name, byte[] data, Manifest old, int seconds) {
+		int generation;
+		do {
+			generation = GENERATIONS.nextInt();
+		} while (old != null && generation == old.generation);
+
+		int count = (data.length + _chunkSize - 1) / _chunkSize;
+		for (int i = 0; i < count; i++) {
+			int offset = i * _chunkSize;
+			pipeline.hset(chunkKey, chunkField(name, generation, i), new Slice(data, offset, Math.min(_chunkSize, data.length - offset)));
+		}
+		if (seconds > 0) {
+			pipeline.expire(chunkKey, seconds);
+		}
+
+		byte[] manifest = new byte[MANIFEST_LENGTH];
+		manifest[0] = MAGIC0;
+		manifest[1] = MAGIC1;
+		writeInt(manifest, 2, data.length);
+		writeInt(manifest, 6, count);
+		writeInt(manifest, 10, generation);
+		return manifest;
+	}
+
+	/**
+	 * pipelineɾһп
+	 */
+	static void remove(Pipeline pipeline, byte[] chunkKey, String name, Manifest manifest) {
+		for (int i = 0; i < manifest.count; i++) {
+			pipeline.hdel(chunkKey, chunkField(name, manifest.generation, i));
+		}
+	}
+
+	/**
+	 * Ѱ˳ȡصĿƴ
+	 */
+	static byte[] assemble(Manifest manifest, java.util.List<byte[]> chunks) throws IOException {
+		if (chunks.size() != manifest.count) {
+			throw new IOException("missing or corrupt chunk:" + manifest);
+		}
+		byte[] data = new byte[manifest.length];
+		int offset = 0;
+		for (byte[] chunk : chunks) {
+			if (chunk == null || offset + chunk.length > data.length) {
+				throw new IOException("missing or corrupt chunk:" + manifest);
+			}
+			System.arraycopy(chunk, 0, data, offset, chunk.length);
+			offset += chunk.length;
+		}
+		if (offset != data.length) {
+			throw new IOException("missing or corrupt chunk:" + manifest);
+		}
+		return data;
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+	private static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * 嵥:ֿ鱣ֵܳȡʹ
+	 */
+	static final class Manifest {
+		final int length;
+		final int count;
+		final int generation;
+
+		Manifest(int length, int count, int generation) {
+			this.length = length;
+			this.count = count;
+			this.generation = generation;
+		}
+
+		@Override
+		public String toString() {
+			return "Manifest{length=" + length + ",count=" + count + ",generation=" + generation + '}';
+		}
+	}
+
+	/**
+	 * ֱӴԭbyte[]дһ,
+	 */
+	private static final class Slice implements BulkArgument {
+		private final byte[] _data;
+		private final int _offset;
+		private final int _length;
+
+		Slice(byte[] data, int offset, int length) {
+			this._data = data;
+			this._offset = offset;
+			this._length = length;
+		}
+
+		public int length() {
+			return _length;
+		}
+
+		public void writeTo(RedisOutputStream os) throws IOException {
+			os.write(_data, _offset, _length);
+		}
+	}
+}
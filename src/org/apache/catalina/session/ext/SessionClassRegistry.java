@@ -0,0 +1,134 @@
+package org.apache.catalina.session.ext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * нڵ㹲õŵĶӦ,redis.
+ * <p>
+ * ûעKryoȫдÿлֵ,ܺΪдһ̵.
+ * µINCR,HSETNXдTS:classes(->),ֻдɹĽڵдTS:classes:ids(->),
+ * ͬʱڵдȥǸ.ػ鵽ĶӦϵ,һÿڵֻһredis.
+ * еݶTS:classesڵredis.
+ * ʧܵFAILURE_BACKOFFֱӰд,redisʱÿлȴһγʱ.
+ *
+ * @author wjw
+ */
+public class SessionClassRegistry {
+	private final Log log = LogFactory.getLog(SessionClassRegistry.class);
+
+	static final String NAMES_KEY = RedisManager.TOMCAT_SESSION_PREFIX + "classes";
+	static final String IDS_KEY = NAMES_KEY + ":ids";
+	static final String SEQUENCE_KEY = NAMES_KEY + ":seq";
+	private static final long FAILURE_BACKOFF = 30000L;
+
+	private final RedisManager _manager;
+	private final ConcurrentHashMap<String, Integer> _nameToId = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentHashMap<Integer, String> _idToName = new ConcurrentHashMap<Integer, String>();
+	//ʧܵ->Եʱ
+	private final ConcurrentHashMap<String, Long> _failures = new ConcurrentHashMap<String, Long>();
+
+	public SessionClassRegistry(RedisManager manager) {
+		this._manager = manager;
+	}
+
+	/**
+	 * @return ,redisʱnull,ʱԭķʽд
+	 */
+	Integer idFor(String className) {
+		Integer id = _nameToId.get(className);
+		if (id != null) {
+			return id;
+		}
+		Long retryAt = _failures.get(className);
+		if (retryAt != null) {
+			if (System.currentTimeMillis() < retryAt) {
+				return null;
+			}
+			_failures.remove(className);
+		}
+		try {
+			id = _manager.jedisRegisterClass(className);
+		} catch (Exception ex) {
+			log.error("error:className=" + className, ex);
+			_failures.put(className, System.currentTimeMillis() + FAILURE_BACKOFF);
+			return null;
+		}
+		cache(className, id);
+		return id;
+	}
+
+	/**
+	 * @return ,redisûŻ߳ʱnull
+	 */
+	String nameFor(int id) {
+		String className = _idToName.get(id);
+		if (className != null) {
+			return className;
+		}
+		try {
+			className = _manager.jedisLookupClass(id);
+		} catch (Exception ex) {
+			log.error("error:id=" + id, ex);
+			return null;
+		}
+		if (className != null) {
+			cache(className, id);
+		}
+		return className;
+	}
+
+	/**
+	 * @return ػ,ûʱnull,redis
+	 */
+	String cachedNameFor(int id) {
+		return _idToName.get(id);
+	}
+
+	private void cache(String className, Integer id) {
+		_nameToId.put(className, id);
+		_idToName.put(id, className);
+	}
+
+	public int getSize() {
+		return _nameToId.size();
+	}
+
+	static int register(Jedis jedis, String className) {
+		String id = jedis.hget(NAMES_KEY, className);
+		if (id != null) {
+			return Integer.parseInt(id);
+		}
+
+		long newId;
+		do {
+			newId = jedis.incr(SEQUENCE_KEY);
+		} while (SharedClassResolver.isReserved(newId)); //ѹֿĸʽͷ
+		if (jedis.hsetnx(NAMES_KEY, className, String.valueOf(newId)) == 1) {
+			jedis.hset(IDS_KEY, String.valueOf(newId), className);
+			return (int) newId;
+		}
+		return Integer.parseInt(jedis.hget(NAMES_KEY, className)); //Ľڵȷ
+	}
+
+	static String lookup(Jedis jedis, int id) {
+		String className = jedis.hget(IDS_KEY, String.valueOf(id));
+		if (className != null) {
+			return className;
+		}
+
+		//ŵĽڵܻûдTS:classes:ids
+		String strId = String.valueOf(id);
+		for (Map.Entry<String, String> entry : jedis.hgetAll(NAMES_KEY).entrySet()) {
+			if (strId.equals(entry.getValue())) {
+				return entry.getKey();
+			}
+		}
+		return null;
+	}
+}
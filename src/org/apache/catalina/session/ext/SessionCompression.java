@@ -0,0 +1,186 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ѹлֵ.
+ * <p>
+ * ֻѹȲСthresholdѹȷʵСֵ.ѹĸʽ:
+ *
+ * <pre>
+ * 0xC5 0x1F 㷨id ѹǰĳ(4ֽ) ѹ
+ * </pre>
+ *
+ * ûѹֵԭ(KryowriteClassAndObject),ǰдݺݿԻһ.
+ * Kryoĵһֽע(varint),SharedClassResolverʹõһֽ0xC5,Բ͸ʽͷ.
+ * ֵͳѹʺCPUʱ.
+ *
+ * @author wjw
+ */
+public class SessionCompression {
+	private static final byte MAGIC0 = SharedClassResolver.RESERVED_HEADER;
+	private static final byte MAGIC1 = (byte) 0x1F;
+	private static final int HEADER_LENGTH = 7;
+
+	private static final Map<Byte, SessionCompressor> COMPRESSORS = new ConcurrentHashMap<Byte, SessionCompressor>();
+	static {
+		register(new DeflateSessionCompressor());
+	}
+
+	private final SessionCompressor _compressor;
+	private final int _threshold;
+	private final ConcurrentHashMap<String, ClassStats> _stats = new ConcurrentHashMap<String, ClassStats>();
+
+	public SessionCompression(String compressorName, int threshold) {
+		SessionCompressor compressor = null;
+		for (SessionCompressor c : COMPRESSORS.values()) {
+			if (c.getName().equals(compressorName)) {
+				compressor = c;
+			}
+		}
+		if (compressor == null) {
+			throw new IllegalArgumentException("unknown compression:" + compressorName);
+		}
+		this._compressor = compressor;
+		this._threshold = threshold;
+	}
+
+	/**
+	 * עѹ㷨,idظ
+	 */
+	public static void register(SessionCompressor compressor) {
+		if (compressor.getId() == 0 || COMPRESSORS.containsKey(compressor.getId())) {
+			throw new IllegalArgumentException("duplicate compressor id:" + compressor.getId());
+		}
+		COMPRESSORS.put(compressor.getId(), compressor);
+	}
+
+	static boolean isCompressed(byte[] data) {
+		return isCompressed(data, data.length);
+	}
+
+	/**
+	 * @param header
+	 *          ݵǰֽ
+	 * @param length
+	 *          ݵĳ
+	 */
+	static boolean isCompressed(byte[] header, int length) {
+		return length >= HEADER_LENGTH && header[0] == MAGIC0 && header[1] == MAGIC1;
+	}
+
+	/**
+	 * @param value
+	 *          ֵ,ֻͳ
+	 * @param data
+	 *          лֵ
+	 */
+	byte[] compress(Object value, byte[] data) throws IOException {
+		if (data.length < _threshold) {
+			return data;
+		}
+
+		long start = System.nanoTime();
+		byte[] compressed = _compressor.compress(data);
+		byte[] result;
+		if (compressed.length + HEADER_LENGTH < data.length) {
+			result = new byte[compressed.length + HEADER_LENGTH];
+			result[0] = MAGIC0;
+			result[1] = MAGIC1;
+			result[2] = _compressor.getId();
+			result[3] = (byte) (data.length >>> 24);
+			result[4] = (byte) (data.length >>> 16);
+			result[5] = (byte) (data.length >>> 8);
+			result[6] = (byte) data.length;
+			System.arraycopy(compressed, 0, result, HEADER_LENGTH, compressed.length);
+		} else { //ѹûбС,ԭʼ
+			result = data;
+		}
+
+		ClassStats stats = getStats(value);
+		stats.compressed.incrementAndGet();
+		stats.rawBytes.addAndGet(data.length);
+		stats.storedBytes.addAndGet(result.length);
+		stats.compressNanos.addAndGet(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * ѹisCompressed()Ϊtrue.õ㷨޹,ͷ㷨idѹ.
+	 */
+	static byte[] decompress(byte[] data) throws IOException {
+		SessionCompressor compressor = COMPRESSORS.get(data[2]);
+		if (compressor == null) {
+			throw new IOException("unknown compressor id:" + data[2]);
+		}
+		int length = ((data[3] & 0xFF) << 24) | ((data[4] & 0xFF) << 16) | ((data[5] & 0xFF) << 8) | (data[6] & 0xFF);
+		return compressor.decompress(data, HEADER_LENGTH, data.length - HEADER_LENGTH, length);
+	}
+
+	/**
+	 * ¼ѹCPUʱ,Ҫڷлֵ֪֮
+	 */
+	void recordDecompress(Object value, long nanos) {
+		ClassStats stats = getStats(value);
+		stats.decompressed.incrementAndGet();
+		stats.decompressNanos.addAndGet(nanos);
+	}
+
+	private ClassStats getStats(Object value) {
+		String className = (value == null) ? "null" : value.getClass().getName();
+		ClassStats stats = _stats.get(className);
+		if (stats == null) {
+			ClassStats newStats = new ClassStats();
+			stats = _stats.putIfAbsent(className, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * гֵѹѹǰֽ֮
+	 */
+	public double getRatio() {
+		long raw = 0;
+		long stored = 0;
+		for (ClassStats stats : _stats.values()) {
+			raw += stats.rawBytes.get();
+			stored += stats.storedBytes.get();
+		}
+		return (raw == 0) ? 1.0 : (double) stored / raw;
+	}
+
+	/**
+	 * ͳƵѹʺCPUʱ,ÿһ
+	 */
+	public String getStatsReport() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, ClassStats> entry : new TreeMap<String, ClassStats>(_stats).entrySet()) {
+			ClassStats stats = entry.getValue();
+			long raw = stats.rawBytes.get();
+			long compressed = stats.compressed.get();
+			long decompressed = stats.decompressed.get();
+			sb.append(entry.getKey()).append(": compressed=").append(compressed).append(",rawBytes=").append(raw).append(",storedBytes=")
+			    .append(stats.storedBytes.get()).append(",ratio=").append((raw == 0) ? 1.0 : (double) stats.storedBytes.get() / raw)
+			    .append(",avgCompressMicros=").append((compressed == 0) ? 0 : stats.compressNanos.get() / compressed / 1000L).append(",decompressed=")
+			    .append(decompressed).append(",avgDecompressMicros=").append((decompressed == 0) ? 0 : stats.decompressNanos.get() / decompressed / 1000L)
+			    .append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static final class ClassStats {
+		final AtomicLong compressed = new AtomicLong();
+		final AtomicLong rawBytes = new AtomicLong();
+		final AtomicLong storedBytes = new AtomicLong();
+		final AtomicLong compressNanos = new AtomicLong();
+		final AtomicLong decompressed = new AtomicLong();
+		final AtomicLong decompressNanos = new AtomicLong();
+	}
+}
@@ -0,0 +1,30 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+
+/**
+ * лѹ㷨.
+ * <p>
+ * ÿ㷨һظid,дѹݵͷ,ȡʱidҵӦ㷨,޸úǰдȻԶȡ.
+ *
+ * @author wjw
+ */
+public interface SessionCompressor {
+	/**
+	 * дѹͷ㷨id,0
+	 */
+	byte getId();
+
+	/**
+	 * ʹõ
+	 */
+	String getName();
+
+	byte[] compress(byte[] data) throws IOException;
+
+	/**
+	 * @param uncompressedLength
+	 *          ѹǰĳ
+	 */
+	byte[] decompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException;
+}
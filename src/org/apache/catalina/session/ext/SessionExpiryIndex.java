@@ -0,0 +1,98 @@
+package org.apache.catalina.session.ext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * redissession.
+ * <p>
+ * ÿredisһ򼯺TS:expiry,membersessionId,scoreǹڵʱ(),ˢ¹ʱͬһ.
+ * ֻ̨߳ȡϴڵsessionId,鱾ǷЩsession,ÿαеısession.
+ * ÿڵÿredisϸԼסλ,ÿڵ㶼ܿеڵsession;
+ * RETENTIONһڵɾ.
+ *
+ * @author wjw
+ */
+public class SessionExpiryIndex {
+	static final String INDEX_KEY = RedisManager.TOMCAT_SESSION_PREFIX + "expiry";
+	static final byte[] INDEX_KEY_BYTES = SafeEncoder.encode(INDEX_KEY);
+
+	//ڵɾ,ҪԶں̵ִ̨߳м
+	static final long RETENTION = 10L * 60L * 1000L;
+
+	private final int _batchSize;
+	//redis(host:port)->λ
+	private final ConcurrentHashMap<String, Cursor> _cursors = new ConcurrentHashMap<String, Cursor>();
+
+	public SessionExpiryIndex(int batchSize) {
+		this._batchSize = batchSize;
+	}
+
+	/**
+	 * pipelinesessionĹʱ,seconds<=0ʾ,ɾ
+	 */
+	static void index(Pipeline pipeline, String sessionId, int seconds) {
+		if (seconds > 0) {
+			pipeline.zadd(INDEX_KEY_BYTES, System.currentTimeMillis() + seconds * 1000L, SafeEncoder.encode(sessionId));
+		} else {
+			pipeline.zrem(INDEX_KEY_BYTES, SafeEncoder.encode(sessionId));
+		}
+	}
+
+	static void unindex(Pipeline pipeline, String sessionId) {
+		pipeline.zrem(INDEX_KEY_BYTES, SafeEncoder.encode(sessionId));
+	}
+
+	/**
+	 * ȡredisϴϴζλõnow֮䵽ڵsessionId,ÿȡbatchSize,ֱȡ.
+	 */
+	List<String> collectDue(Jedis jedis, long now) {
+		String shardName = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
+		Cursor cursor = _cursors.get(shardName);
+		if (cursor == null) { //֮ǰڵȫɨ账
+			cursor = new Cursor(now);
+			_cursors.put(shardName, cursor);
+		}
+		if (cursor.score < now - RETENTION) { //Ѿɾ,offset׼ȷ
+			cursor.score = now - RETENTION;
+			cursor.offset = 0;
+		}
+
+		List<String> ids = new ArrayList<String>();
+		while (true) {
+			//scoreͬmember,offsetϴѾġscorecursor.score
+			Set<Tuple> due = jedis.zrangeByScoreWithScores(INDEX_KEY, cursor.score, now, cursor.offset, _batchSize);
+			for (Tuple tuple : due) {
+				ids.add(tuple.getElement());
+				if (tuple.getScore() == cursor.score) {
+					cursor.offset++;
+				} else {
+					cursor.score = tuple.getScore();
+					cursor.offset = 1;
+				}
+			}
+			if (due.size() < _batchSize) {
+				break;
+			}
+		}
+
+		jedis.zremrangeByScore(INDEX_KEY, 0, now - RETENTION);
+		return ids;
+	}
+
+	private static final class Cursor {
+		double score;
+		int offset = 0;
+
+		Cursor(double score) {
+			this.score = score;
+		}
+	}
+}
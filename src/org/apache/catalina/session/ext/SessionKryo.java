@@ -0,0 +1,154 @@
+package org.apache.catalina.session.ext;
+
+import java.lang.reflect.InvocationHandler;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.esotericsoftware.kryo.ClassResolver;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+
+import de.javakaffee.kryoserializers.ArraysAsListSerializer;
+import de.javakaffee.kryoserializers.BitSetSerializer;
+import de.javakaffee.kryoserializers.CollectionsEmptyListSerializer;
+import de.javakaffee.kryoserializers.CollectionsEmptyMapSerializer;
+import de.javakaffee.kryoserializers.CollectionsEmptySetSerializer;
+import de.javakaffee.kryoserializers.CollectionsSingletonListSerializer;
+import de.javakaffee.kryoserializers.CollectionsSingletonMapSerializer;
+import de.javakaffee.kryoserializers.CollectionsSingletonSetSerializer;
+import de.javakaffee.kryoserializers.CopyForIterateCollectionSerializer;
+import de.javakaffee.kryoserializers.CopyForIterateMapSerializer;
+import de.javakaffee.kryoserializers.DateSerializer;
+import de.javakaffee.kryoserializers.EnumMapSerializer;
+import de.javakaffee.kryoserializers.EnumSetSerializer;
+import de.javakaffee.kryoserializers.GregorianCalendarSerializer;
+import de.javakaffee.kryoserializers.JdkProxySerializer;
+import de.javakaffee.kryoserializers.KryoReflectionFactorySupport;
+import de.javakaffee.kryoserializers.RegexSerializer;
+import de.javakaffee.kryoserializers.SynchronizedCollectionsSerializer;
+import de.javakaffee.kryoserializers.URISerializer;
+import de.javakaffee.kryoserializers.UUIDSerializer;
+import de.javakaffee.kryoserializers.UnmodifiableCollectionsSerializer;
+import de.javakaffee.kryoserializers.cglib.CGLibProxySerializer;
+import de.javakaffee.kryoserializers.guava.ImmutableListSerializer;
+import de.javakaffee.kryoserializers.guava.ImmutableMapSerializer;
+import de.javakaffee.kryoserializers.guava.ImmutableMultimapSerializer;
+import de.javakaffee.kryoserializers.guava.ImmutableSetSerializer;
+import de.javakaffee.kryoserializers.jodatime.JodaDateTimeSerializer;
+import de.javakaffee.kryoserializers.jodatime.JodaLocalDateSerializer;
+import de.javakaffee.kryoserializers.jodatime.JodaLocalDateTimeSerializer;
+
+/**
+ * ʹָClassResolverKryo,úKryoSerializer.getKryo()ͬ.
+ * <p>
+ * register()KryoSerializerͬ˳עͬ,Աעͬ,ַʽдݿԻȡ.
+ * û޲캯KryoReflectionFactorySupportһReflectionFactoryʵ.
+ *
+ * @author wjw
+ */
+public class SessionKryo extends Kryo {
+	private static final String CGLIB_MARKER = "$$EnhancerByCGLIB$$";
+
+	public SessionKryo(ClassResolver classResolver) {
+		super(classResolver, new MapReferenceResolver());
+		setRegistrationRequired(false);
+		register(this);
+	}
+
+	/**
+	 * עKryoSerializerע.joda-timecglibguavaclasspathʱ,KryoSerializerһ
+	 */
+	static void register(Kryo kryo) {
+		kryo.register(Arrays.asList("").getClass(), new ArraysAsListSerializer());
+		kryo.register(Collections.EMPTY_LIST.getClass(), new CollectionsEmptyListSerializer());
+		kryo.register(Collections.EMPTY_MAP.getClass(), new CollectionsEmptyMapSerializer());
+		kryo.register(Collections.EMPTY_SET.getClass(), new CollectionsEmptySetSerializer());
+		kryo.register(Collections.singletonList("").getClass(), new CollectionsSingletonListSerializer());
+		kryo.register(Collections.singleton("").getClass(), new CollectionsSingletonSetSerializer());
+		kryo.register(Collections.singletonMap("", "").getClass(), new CollectionsSingletonMapSerializer());
+		kryo.register(BigDecimal.class, new DefaultSerializers.BigDecimalSerializer());
+		kryo.register(BigInteger.class, new DefaultSerializers.BigIntegerSerializer());
+		kryo.register(Pattern.class, new RegexSerializer());
+		kryo.register(BitSet.class, new BitSetSerializer());
+		kryo.register(URI.class, new URISerializer());
+		kryo.register(UUID.class, new UUIDSerializer());
+		kryo.register(GregorianCalendar.class, new GregorianCalendarSerializer());
+		kryo.register(InvocationHandler.class, new JdkProxySerializer());
+		UnmodifiableCollectionsSerializer.registerSerializers(kryo);
+		SynchronizedCollectionsSerializer.registerSerializers(kryo);
+		try {
+			ClassLoader classLoader = SessionKryo.class.getClassLoader();
+			kryo.register(Class.forName("org.joda.time.DateTime", true, classLoader), new JodaDateTimeSerializer());
+			kryo.register(Class.forName("org.joda.time.LocalDate", true, classLoader), new JodaLocalDateSerializer());
+			kryo.register(Class.forName("org.joda.time.LocalDateTime", true, classLoader), new JodaLocalDateTimeSerializer());
+		} catch (Throwable thex) {
+		}
+		try {
+			kryo.register(CGLibProxySerializer.CGLibProxyMarker.class, new CGLibProxySerializer());
+		} catch (Throwable thex) {
+		}
+		try {
+			ImmutableListSerializer.registerSerializers(kryo);
+			ImmutableSetSerializer.registerSerializers(kryo);
+			ImmutableMapSerializer.registerSerializers(kryo);
+			ImmutableMultimapSerializer.registerSerializers(kryo);
+		} catch (Throwable thex) {
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes") //KryoĲԭʼClass,дClass<?>ܸ
+	public Serializer<?> getDefaultSerializer(Class type) {
+		if (EnumSet.class.isAssignableFrom(type)) {
+			return new EnumSetSerializer();
+		}
+		if (EnumMap.class.isAssignableFrom(type)) {
+			return new EnumMapSerializer();
+		}
+		if (Collection.class.isAssignableFrom(type)) {
+			return new CopyForIterateCollectionSerializer();
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			return new CopyForIterateMapSerializer();
+		}
+		if (Date.class.isAssignableFrom(type)) {
+			@SuppressWarnings("unchecked")
+			Serializer<?> serializer = new DateSerializer(type);
+			return serializer;
+		}
+		if (type.getName().indexOf(CGLIB_MARKER) > 0) {
+			try {
+				if (CGLibProxySerializer.canSerialize(type)) {
+					return getSerializer(CGLibProxySerializer.CGLibProxyMarker.class);
+				}
+			} catch (Throwable thex) { //ûcglib
+			}
+		}
+
+		Serializer<?> serializer = super.getDefaultSerializer(type);
+		if (serializer instanceof FieldSerializer) {
+			((FieldSerializer<?>) serializer).setIgnoreSyntheticFields(false);
+		}
+		return serializer;
+	}
+
+	@Override
+	public <T> T newInstance(Class<T> type) {
+		return KryoReflectionFactorySupport.newInstanceFromReflectionFactory(type);
+	}
+}
@@ -0,0 +1,71 @@
+package org.apache.catalina.session.ext;
+
+import java.nio.ByteBuffer;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * sessionredisԪ,session hashFIELD,̶26ֽ:
+ *
+ * <pre>
+ * ʽ(1ֽ) ʱ(8ֽ) ʱ(8ֽ) maxInactiveInterval(4ֽ) д(4ֽ) ־(1ֽ)
+ * </pre>
+ *
+ * ˢ¹ʱͬһд.Ľڵredisؽsessionʱָʱ䡢ʱmaxInactiveInterval,
+ * õǰʱManagerȱʡֵ.
+ * ǰİ汾ֻдCREATION_TIME_FIELD,ȡʱȻ.
+ *
+ * @author wjw
+ */
+public class SessionMetadata {
+	static final String FIELD = "__[meta]__";
+	static final byte[] FIELD_BYTES = SafeEncoder.encode(FIELD);
+
+	static final byte FORMAT = 1;
+	static final int LENGTH = 26;
+
+	//дʱsessionµ(ͻ˻ûдsessionId)
+	static final byte FLAG_NEW = 0x01;
+
+	final long creationTime;
+	final long lastAccessedTime;
+	final int maxInactiveInterval;
+	final int version;
+	final byte flags;
+
+	SessionMetadata(long creationTime, long lastAccessedTime, int maxInactiveInterval, int version, byte flags) {
+		this.creationTime = creationTime;
+		this.lastAccessedTime = lastAccessedTime;
+		this.maxInactiveInterval = maxInactiveInterval;
+		this.version = version;
+		this.flags = flags;
+	}
+
+	byte[] encode() {
+		ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+		buffer.put(FORMAT);
+		buffer.putLong(creationTime);
+		buffer.putLong(lastAccessedTime);
+		buffer.putInt(maxInactiveInterval);
+		buffer.putInt(version);
+		buffer.put(flags);
+		return buffer.array();
+	}
+
+	/**
+	 * @return dataΪnull߸ʽʶʱnull
+	 */
+	static SessionMetadata decode(byte[] data) {
+		if (data == null || data.length < LENGTH || data[0] != FORMAT) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(data, 1, LENGTH - 1);
+		return new SessionMetadata(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.get());
+	}
+
+	@Override
+	public String toString() {
+		return "SessionMetadata{creationTime=" + creationTime + ",lastAccessedTime=" + lastAccessedTime + ",maxInactiveInterval=" + maxInactiveInterval
+		    + ",version=" + version + ",flags=" + flags + '}';
+	}
+}
@@ -0,0 +1,275 @@
+package org.apache.catalina.session.ext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * ճģʽµıԻ(near-cache).
+ * <p>
+ * 淴лֵ,keysessionId.κһڵ޸redissession,
+ * ͬһpipelinesessionڵredisһʧЧϢ,ÿڵÿredisһ,
+ * յڵʧЧϢɾӦĻ.ӶϿڼܶʧϢ,ԶϿ¶ʱ.
+ * <p>
+ * ÿsessionÿԸһʧЧ,redisǰȽ,ֻڶȡڼûʧЧʱŷŽ,
+ * session߱ʧЧӰ.
+ *
+ * @author wjw
+ */
+public class SessionNearCache {
+	private final Log log = LogFactory.getLog(SessionNearCache.class);
+
+	static final String INVALIDATE_CHANNEL = RedisManager.TOMCAT_SESSION_PREFIX + "invalidate";
+	private static final byte[] INVALIDATE_CHANNEL_BYTES = SafeEncoder.encode(INVALIDATE_CHANNEL);
+
+	private final String _nodeId = UUID.randomUUID().toString();
+	private final ConcurrentHashMap<String, Entry> _cache = new ConcurrentHashMap<String, Entry>();
+
+	//ʧЧ,session,´EntryǰEntryŲͬ
+	private final AtomicLong _sequence = new AtomicLong();
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
+	private final List<JedisShardInfo> _shards;
+	private volatile boolean _running = false;
+	private Subscriber[] _subscribers;
+
+	public SessionNearCache(List<JedisShardInfo> shards) {
+		this._shards = shards;
+	}
+
+	public synchronized void start() {
+		_running = true;
+		_subscribers = new Subscriber[_shards.size()];
+		for (int i = 0; i < _subscribers.length; i++) {
+			_subscribers[i] = new Subscriber(_shards.get(i));
+			_subscribers[i].start();
+		}
+	}
+
+	public synchronized void stop() {
+		_running = false;
+		if (_subscribers != null) {
+			for (Subscriber subscriber : _subscribers) {
+				subscriber.shutdown();
+			}
+			_subscribers = null;
+		}
+		_cache.clear();
+	}
+
+	/**
+	 * ȡredis֮ǰԵʧЧ,put()
+	 */
+	long stamp(String sessionId, String name) {
+		Entry entry = _cache.get(sessionId);
+		if (entry == null) {
+			Entry newEntry = new Entry(_sequence.incrementAndGet());
+			entry = _cache.putIfAbsent(sessionId, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry.version(name);
+	}
+
+	Object get(String sessionId, String name) {
+		Entry entry = _cache.get(sessionId);
+		Object value = (entry == null) ? null : entry.values.get(name);
+		if (value == null) {
+			_misses.incrementAndGet();
+		} else {
+			_hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * ֻstamp֮ûʧЧsessionҲûбʧЧʱŷŽ
+	 */
+	void put(String sessionId, String name, Object value, long stamp) {
+		if (value == null) {
+			return;
+		}
+		Entry entry = _cache.get(sessionId);
+		if (entry == null || entry.version(name) != stamp) {
+			return;
+		}
+		entry.values.put(name, value);
+		if (_cache.get(sessionId) != entry || entry.version(name) != stamp) { //ŽȥͬʱʧЧ
+			entry.values.remove(name, value);
+		}
+	}
+
+	void invalidate(String sessionId, String name) {
+		Entry entry = _cache.get(sessionId);
+		if (entry != null) {
+			entry.versions.put(name, _sequence.incrementAndGet());
+			entry.values.remove(name);
+		}
+	}
+
+	void invalidate(String sessionId) {
+		_cache.remove(sessionId);
+	}
+
+	void clear() {
+		_cache.clear();
+	}
+
+	/**
+	 * ޸redisͬһpipeline﷢ʧЧϢ.
+	 *
+	 * @param names
+	 *          ޸ĵ,Ϊձʾsession
+	 */
+	void publish(Pipeline pipeline, String sessionId, String... names) {
+		StringBuilder sb = new StringBuilder(_nodeId).append('\n').append(sessionId);
+		for (String name : names) {
+			sb.append('\n').append(name);
+		}
+		pipeline.publish(INVALIDATE_CHANNEL_BYTES, SafeEncoder.encode(sb.toString()));
+	}
+
+	void onInvalidateMessage(String message) {
+		String[] parts = message.split("\n");
+		if (parts.length < 2 || parts[0].equals(_nodeId)) { //ԼϢ,ػѾ¹
+			return;
+		}
+		if (parts.length == 2) {
+			invalidate(parts[1]);
+		} else {
+			for (int i = 2; i < parts.length; i++) {
+				invalidate(parts[1], parts[i]);
+			}
+		}
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	public int getCachedSessions() {
+		return _cache.size();
+	}
+
+	/**
+	 * һsessionĻ.sessionʧЧʱƳEntry,֮ǰȡõŶЧ
+	 */
+	private static final class Entry {
+		final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+		//->ʧЧ,ûʧЧôEntryʱ
+		final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<String, Long>();
+		final long created;
+
+		Entry(long created) {
+			this.created = created;
+		}
+
+		long version(String name) {
+			Long version = versions.get(name);
+			return (version == null) ? created : version.longValue();
+		}
+	}
+
+	/**
+	 * ÿredisһ߳,ӶϿÿһ.
+	 */
+	private class Subscriber extends Thread {
+		private final JedisShardInfo _shardInfo;
+		private volatile Jedis _jedis;
+		private final JedisPubSub _pubSub = new JedisPubSub() {
+			@Override
+			public void onMessage(String channel, String message) {
+				onInvalidateMessage(message);
+			}
+
+			@Override
+			public void onSubscribe(String channel, int subscribedChannels) {
+				clear(); //ϿڼϢѾʧ
+			}
+
+			@Override
+			public void onPMessage(String pattern, String channel, String message) {
+			}
+
+			@Override
+			public void onUnsubscribe(String channel, int subscribedChannels) {
+			}
+
+			@Override
+			public void onPUnsubscribe(String pattern, int subscribedChannels) {
+			}
+
+			@Override
+			public void onPSubscribe(String pattern, int subscribedChannels) {
+			}
+		};
+
+		Subscriber(JedisShardInfo shardInfo) {
+			super("RedisManager-NearCache-" + shardInfo.getHost() + ":" + shardInfo.getPort());
+			this.setDaemon(true);
+			this._shardInfo = shardInfo;
+		}
+
+		@Override
+		public void run() {
+			while (_running) {
+				try {
+					_jedis = new Jedis(_shardInfo);
+					_jedis.subscribe(_pubSub, INVALIDATE_CHANNEL);
+				} catch (Exception ex) {
+					if (_running) {
+						log.error("error:" + _shardInfo, ex);
+					}
+				} finally {
+					clear();
+					disconnect();
+				}
+
+				if (_running) {
+					try {
+						Thread.sleep(1000L);
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+			}
+		}
+
+		void shutdown() {
+			try {
+				if (_pubSub.isSubscribed()) {
+					_pubSub.unsubscribe();
+				}
+			} catch (Exception ex) {
+			}
+			disconnect();
+			this.interrupt();
+		}
+
+		private void disconnect() {
+			Jedis jedis = _jedis;
+			if (jedis != null) {
+				try {
+					jedis.disconnect();
+				} catch (Exception ex) {
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.apache.catalina.session.ext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ȷredisﲻڵsessionId.
+ * <p>
+ * ͹ڵcookieڵsessionId,ÿҪredisһ.
+ * ס鲻id,ttlڲٲredis.ֻȷеid,ʵڵsessionΪ;
+ * شidsessionʱɾ.ౣmaxSize,Ժڵ,ȻͲټ¼.
+ *
+ * @author wjw
+ */
+public class SessionNegativeCache {
+	private final ConcurrentHashMap<String, Long> _absent = new ConcurrentHashMap<String, Long>();
+	private final long _ttl;
+	private final int _maxSize;
+
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
+	public SessionNegativeCache(long ttl, int maxSize) {
+		this._ttl = ttl;
+		this._maxSize = maxSize;
+	}
+
+	/**
+	 * @return ttl֮ȷϹʱtrue
+	 */
+	boolean isAbsent(String sessionId) {
+		Long expireAt = _absent.get(sessionId);
+		if (expireAt != null) {
+			if (expireAt.longValue() > System.currentTimeMillis()) {
+				_hits.incrementAndGet();
+				return true;
+			}
+			_absent.remove(sessionId, expireAt);
+		}
+		_misses.incrementAndGet();
+		return false;
+	}
+
+	void putAbsent(String sessionId) {
+		if (_absent.size() >= _maxSize) {
+			purge();
+			if (_absent.size() >= _maxSize) {
+				return;
+			}
+		}
+		_absent.put(sessionId, Long.valueOf(System.currentTimeMillis() + _ttl));
+	}
+
+	void remove(String sessionId) {
+		_absent.remove(sessionId);
+	}
+
+	/**
+	 * ɾڵ
+	 */
+	void purge() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<String, Long>> it = _absent.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue().longValue() <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	public int getSize() {
+		return _absent.size();
+	}
+}
@@ -0,0 +1,231 @@
+package org.apache.catalina.session.ext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * ƱرsessionʹС.
+ * <p>
+ * maxLocalSessionsmaxLocalSessionBytesֽ(лĴС)ʱ,
+ * ʱӾɵ°ѿгpassivateMinIdlesessionӱƳ(passivate),
+ * sessionȻredis,´ʱfindSession()¼.
+ * heapPressureThresholdʱ,GCʹʳҲᴥһƳ,Ƴһĺѡsession.
+ * ڴJVM,ͬһJVMеSessionPassivatorһ(HeapPressureMonitor):
+ * ڴصֵΪSessionPassivator͵Ǹ,յ֪ͨÿSessionPassivatorԼֵж.
+ * ֻڱءûиƵredisԵsessionᱻƳ.
+ *
+ * @author wjw
+ */
+public class SessionPassivator {
+	private final Log log = LogFactory.getLog(SessionPassivator.class);
+
+	private final RedisManager _manager;
+	private final int _maxSessions;
+	private final long _maxBytes;
+	private final long _minIdleMillis;
+	private final float _heapThreshold;
+
+	private volatile boolean _heapPressure = false;
+	private volatile long _estimatedBytes = 0;
+	private final AtomicLong _passivated = new AtomicLong();
+	private final AtomicLong _heapPressureEvents = new AtomicLong();
+
+	public SessionPassivator(RedisManager manager, int maxSessions, long maxBytes, int minIdleSeconds, float heapThreshold) {
+		this._manager = manager;
+		this._maxSessions = maxSessions;
+		this._maxBytes = maxBytes;
+		this._minIdleMillis = minIdleSeconds * 1000L;
+		this._heapThreshold = heapThreshold;
+	}
+
+	public void start() {
+		if (_heapThreshold > 0f) {
+			HeapPressureMonitor.register(this);
+		}
+	}
+
+	public void stop() {
+		if (_heapThreshold > 0f) {
+			HeapPressureMonitor.unregister(this);
+		}
+	}
+
+	/**
+	 * HeapPressureMonitorJMX֪ͨ߳,һbackgroundProcess()ﴦ
+	 */
+	void onCollectionUsage(MemoryUsage usage) {
+		if (usage.getMax() > 0 && usage.getUsed() >= (long) (usage.getMax() * _heapThreshold)) {
+			_heapPressureEvents.incrementAndGet();
+			_heapPressure = true;
+		}
+	}
+
+	/**
+	 * RedisManager.backgroundProcess()
+	 */
+	void process() {
+		Session[] sessions = _manager.findSessions();
+		List<RedisSession> candidates = new ArrayList<RedisSession>(sessions.length);
+		long totalBytes = 0;
+		for (Session session : sessions) {
+			if (!(session instanceof RedisSession)) {
+				continue;
+			}
+			RedisSession redisSession = (RedisSession) session;
+			totalBytes += redisSession.getEstimatedSize();
+			if (redisSession.isValid() && !redisSession.hasLocalOnlyAttributes()) {
+				candidates.add(redisSession);
+			}
+		}
+		_estimatedBytes = totalBytes;
+
+		int excessSessions = (_maxSessions > 0) ? sessions.length - _maxSessions : 0;
+		long excessBytes = (_maxBytes > 0) ? totalBytes - _maxBytes : 0;
+		int pressureSessions = 0;
+		if (_heapPressure) {
+			_heapPressure = false;
+			pressureSessions = candidates.size() / 2;
+		}
+		if (excessSessions <= 0 && excessBytes <= 0 && pressureSessions <= 0) {
+			return;
+		}
+
+		Collections.sort(candidates, new Comparator<RedisSession>() {
+			public int compare(RedisSession s1, RedisSession s2) {
+				long t1 = s1.getThisAccessedTimeInternal();
+				long t2 = s2.getThisAccessedTimeInternal();
+				return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+			}
+		});
+
+		long now = System.currentTimeMillis();
+		int count = 0;
+		for (RedisSession session : candidates) {
+			if (excessSessions <= 0 && excessBytes <= 0 && pressureSessions <= 0) {
+				break;
+			}
+			if (now - session.getThisAccessedTimeInternal() < _minIdleMillis) { //Ķ
+				break;
+			}
+			long size = session.getEstimatedSize();
+			if (_manager.passivate(session)) {
+				count++;
+				excessSessions--;
+				excessBytes -= size;
+				pressureSessions--;
+			}
+		}
+		_passivated.addAndGet(count);
+		if (count > 0 && _manager.debugEnabled) {
+			log.info("passivated:" + count + ",local sessions:" + sessions.length + ",estimated bytes:" + totalBytes);
+		}
+	}
+
+	public long getPassivated() {
+		return _passivated.get();
+	}
+
+	public long getEstimatedBytes() {
+		return _estimatedBytes;
+	}
+
+	public long getHeapPressureEvents() {
+		return _heapPressureEvents.get();
+	}
+
+	/**
+	 * JVMSessionPassivatorõڴؼ.һSessionPassivatorעʱ޸ڴصֵʼ,
+	 * һעʱָԭֵ.HeapPressureMonitor.class
+	 */
+	private static final class HeapPressureMonitor implements NotificationListener {
+		private static final Log log = LogFactory.getLog(HeapPressureMonitor.class);
+
+		private static final List<SessionPassivator> PASSIVATORS = new CopyOnWriteArrayList<SessionPassivator>();
+		//޸ֵڴ->ԭֵ
+		private static final Map<MemoryPoolMXBean, Long> PREVIOUS_THRESHOLDS = new HashMap<MemoryPoolMXBean, Long>();
+		private static HeapPressureMonitor _instance = null;
+
+		static synchronized void register(SessionPassivator passivator) {
+			PASSIVATORS.add(passivator);
+			if (_instance == null) {
+				for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+					if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+						PREVIOUS_THRESHOLDS.put(pool, pool.getCollectionUsageThreshold());
+					}
+				}
+				_instance = new HeapPressureMonitor();
+				((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(_instance, null, null);
+			}
+			updateThresholds();
+		}
+
+		static synchronized void unregister(SessionPassivator passivator) {
+			if (!PASSIVATORS.remove(passivator)) {
+				return;
+			}
+			if (!PASSIVATORS.isEmpty()) {
+				updateThresholds();
+				return;
+			}
+
+			try {
+				((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(_instance);
+			} catch (ListenerNotFoundException ex) {
+			}
+			_instance = null;
+			for (Map.Entry<MemoryPoolMXBean, Long> entry : PREVIOUS_THRESHOLDS.entrySet()) {
+				try {
+					entry.getKey().setCollectionUsageThreshold(entry.getValue());
+				} catch (Exception ex) {
+					log.warn("restore threshold error:" + entry.getKey().getName(), ex);
+				}
+			}
+			PREVIOUS_THRESHOLDS.clear();
+		}
+
+		/**
+		 * ڴصֵΪSessionPassivator͵
+		 */
+		private static void updateThresholds() {
+			float threshold = 1f;
+			for (SessionPassivator passivator : PASSIVATORS) {
+				threshold = Math.min(threshold, passivator._heapThreshold);
+			}
+			for (MemoryPoolMXBean pool : PREVIOUS_THRESHOLDS.keySet()) {
+				pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * threshold));
+				log.info("heap pressure threshold:" + pool.getName() + "=" + pool.getCollectionUsageThreshold());
+			}
+		}
+
+		public void handleNotification(Notification notification, Object handback) {
+			if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+				return;
+			}
+			MemoryUsage usage = MemoryNotificationInfo.from((CompositeData) notification.getUserData()).getUsage();
+			for (SessionPassivator passivator : PASSIVATORS) {
+				passivator.onCollectionUsage(usage);
+			}
+		}
+	}
+}
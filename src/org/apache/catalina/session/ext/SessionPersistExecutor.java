@@ -0,0 +1,240 @@
+package org.apache.catalina.session.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * 첽дsessionredisִ.
+ * <p>
+ * ֻ߳ѱ޸ĵsessionŽн,ɼ̵̨߳RedisSession.flush()дredis.
+ * ͬһsessionڶֻһ,ŶڼĶ޸Ļϲһflush.
+ * ʱbackpressureԴ:
+ * <ul>
+ * <li>block:̵߳ȴпλ</li>
+ * <li>dropOldest:ѶϵһƳ,߳ͬд,µ޸Ľ.̵߳ȴϵsession,
+ * Լ޸ĵsession</li>
+ * <li>sync:߳ͬд</li>
+ * </ul>
+ *
+ * @author wjw
+ */
+public class SessionPersistExecutor {
+	private final Log log = LogFactory.getLog(SessionPersistExecutor.class);
+
+	static final String POLICY_BLOCK = "block";
+	static final String POLICY_DROP_OLDEST = "dropOldest";
+	static final String POLICY_SYNC = "sync";
+
+	private final ArrayBlockingQueue<Task> _queue;
+	private final ConcurrentHashMap<RedisSession, Boolean> _queued = new ConcurrentHashMap<RedisSession, Boolean>();
+	private final String _policy;
+	private final Thread[] _workers;
+	private volatile boolean _running = true;
+
+	private final AtomicLong _submitted = new AtomicLong();
+	private final AtomicLong _coalesced = new AtomicLong();
+	private final AtomicLong _dropped = new AtomicLong();
+	private final AtomicLong _syncFallbacks = new AtomicLong();
+	private final AtomicLong _flushed = new AtomicLong();
+	private volatile long _lastLag = 0;
+	private volatile long _maxLag = 0;
+
+	public SessionPersistExecutor(int threads, int queueSize, String policy) {
+		if (!POLICY_BLOCK.equals(policy) && !POLICY_DROP_OLDEST.equals(policy) && !POLICY_SYNC.equals(policy)) {
+			throw new IllegalArgumentException("unknown backpressure policy:" + policy);
+		}
+		this._queue = new ArrayBlockingQueue<Task>(queueSize);
+		this._policy = policy;
+		this._workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			_workers[i] = new Thread("RedisManager-Persist-" + i) {
+				@Override
+				public void run() {
+					work();
+				}
+			};
+			_workers[i].setDaemon(true);
+			_workers[i].start();
+		}
+	}
+
+	/**
+	 * Űsession޸첽дredis
+	 */
+	void submit(RedisSession session) {
+		if (!_running) {
+			session.flush();
+			return;
+		}
+		if (_queued.putIfAbsent(session, Boolean.TRUE) != null) { //Ѿڶ,޸Ļһflushһд
+			_coalesced.incrementAndGet();
+			return;
+		}
+		_submitted.incrementAndGet();
+
+		Task task = new Task(session);
+		while (!_queue.offer(task)) {
+			if (POLICY_BLOCK.equals(_policy)) {
+				try {
+					_queue.put(task);
+					return;
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			} else if (POLICY_DROP_OLDEST.equals(_policy)) {
+				Task oldest = _queue.poll();
+				if (oldest != null) { //Ƴе޸Ĳܵȵ´α޸Ĳд
+					_dropped.incrementAndGet();
+					run(oldest);
+					continue;
+				}
+			}
+
+			_queued.remove(session);
+			_syncFallbacks.incrementAndGet();
+			session.flush();
+			return;
+		}
+	}
+
+	private void work() {
+		while (_running || !_queue.isEmpty()) {
+			Task task;
+			try {
+				task = _queue.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				if (!_running) {
+					continue;
+				}
+				return;
+			}
+			if (task == null) {
+				continue;
+			}
+			run(task);
+		}
+	}
+
+	private void run(Task task) {
+		_queued.remove(task.session); //Ƴ,flushڼ޸ĻŶ
+		long lag = (System.nanoTime() - task.enqueueTime) / 1000000L;
+		_lastLag = lag;
+		if (lag > _maxLag) {
+			_maxLag = lag;
+		}
+		try {
+			task.session.flush();
+			_flushed.incrementAndGet();
+		} catch (Throwable thex) {
+			log.error("error:id=" + task.session.getIdInternal(), thex);
+		}
+	}
+
+	/**
+	 * ֹͣµ,timeoutڰѶʣµsessionд;ʱڵǰ߳дʣµ.
+	 */
+	void shutdown(long timeout) {
+		_running = false;
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Thread worker : _workers) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				break;
+			}
+			try {
+				worker.join(wait);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		Task task;
+		while ((task = _queue.poll()) != null) {
+			run(task);
+		}
+		for (Thread worker : _workers) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * ֹͣµ,ед:Ŷӵ޸Ȼsession,RedisManagerֹͣʱredisд.
+	 * ȴtimeoutִеflush.
+	 */
+	void abandon(long timeout) {
+		_running = false;
+		_queue.clear();
+		_queued.clear();
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Thread worker : _workers) {
+			worker.interrupt();
+		}
+		for (Thread worker : _workers) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				break;
+			}
+			try {
+				worker.join(wait);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		return _queue.size();
+	}
+
+	/**
+	 * һѾȴĺ
+	 */
+	public long getQueueLag() {
+		Task oldest = _queue.peek();
+		return (oldest == null) ? 0 : (System.nanoTime() - oldest.enqueueTime) / 1000000L;
+	}
+
+	public long getLastLag() {
+		return _lastLag;
+	}
+
+	public long getMaxLag() {
+		return _maxLag;
+	}
+
+	public long getSubmitted() {
+		return _submitted.get();
+	}
+
+	public long getCoalesced() {
+		return _coalesced.get();
+	}
+
+	public long getDropped() {
+		return _dropped.get();
+	}
+
+	public long getSyncFallbacks() {
+		return _syncFallbacks.get();
+	}
+
+	public long getFlushed() {
+		return _flushed.get();
+	}
+
+	private static final class Task {
+		final RedisSession session;
+		final long enqueueTime = System.nanoTime();
+
+		Task(RedisSession session) {
+			this.session = session;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import javax.servlet.ServletException;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Pipeline;
+import org.apache.catalina.Valve;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+/**
+ * ԤʱRedisManagerԶװHostPipeline,Context֤ValveӦ֮ǰִ.
+ * sessionId(cookieURL,ڽHost֮ǰѾ)ûsessionʱ,
+ * SessionPrefetcher߳￪ʼredisȡ,ִ̼߳.
+ * ÿHostֻװһ,ContextҵԤRedisManager;һRedisManagerֹͣʱHostƳ.
+ *
+ * @author wjw
+ */
+public class SessionPrefetchValve extends ValveBase {
+	//Context->ContextRedisManager
+	private final ConcurrentHashMap<Container, RedisManager> _managers = new ConcurrentHashMap<Container, RedisManager>();
+
+	public SessionPrefetchValve() {
+		super(true);
+	}
+
+	/**
+	 * managerӵHostSessionPrefetchValve,Hostﻹûʱװһ
+	 */
+	static void install(RedisManager manager) {
+		Pipeline pipeline = manager.getContainer().getParent().getPipeline();
+		synchronized (pipeline) {
+			SessionPrefetchValve valve = find(pipeline);
+			if (valve == null) {
+				valve = new SessionPrefetchValve();
+				pipeline.addValve(valve);
+			}
+			valve._managers.put(manager.getContainer(), manager);
+		}
+	}
+
+	/**
+	 * HostSessionPrefetchValveȥmanager,ûбRedisManagerʱƳValve
+	 */
+	static void uninstall(RedisManager manager) {
+		Pipeline pipeline = manager.getContainer().getParent().getPipeline();
+		synchronized (pipeline) {
+			SessionPrefetchValve valve = find(pipeline);
+			if (valve == null) {
+				return;
+			}
+			valve._managers.remove(manager.getContainer(), manager);
+			if (valve._managers.isEmpty()) {
+				pipeline.removeValve(valve);
+			}
+		}
+	}
+
+	private static SessionPrefetchValve find(Pipeline pipeline) {
+		for (Valve valve : pipeline.getValves()) {
+			if (valve instanceof SessionPrefetchValve) {
+				return (SessionPrefetchValve) valve;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void invoke(Request request, Response response) throws IOException, ServletException {
+		String id = null;
+		Future<RedisSession> future = null;
+		RedisManager manager = (request.getContext() == null) ? null : _managers.get(request.getContext());
+		if (manager != null) {
+			id = request.getRequestedSessionId();
+			if (id != null) {
+				future = manager.prefetch(id);
+			}
+		}
+		try {
+			getNext().invoke(request, response);
+		} finally {
+			if (future != null) {
+				manager.discardPrefetch(id, future);
+			}
+		}
+	}
+}
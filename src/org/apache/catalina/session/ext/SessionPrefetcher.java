@@ -0,0 +1,146 @@
+package org.apache.catalina.session.ext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ڶI/O߳Ԥȴredisȡsession.
+ * <p>
+ * SessionPrefetchValveսHostʱsessionIdȡ,ִ̼߳кValveFilter;
+ * RedisManager.findSession()ʱȡڽлѾɵĶȡ,ٲһredis.
+ * ͬһsessionIdͬʱֻһȡ;̶߳æҲʱԤ,findSession()ͬȡ.
+ * findSession()ʱȡڶûпʼ,ȡȡ,߳Լȡ,ǰĶȡ.
+ *
+ * @author wjw
+ */
+public class SessionPrefetcher {
+	private final RedisManager _manager;
+	private final ThreadPoolExecutor _executor;
+	//sessionId->ûбfindSession()ȡߵĶȡ
+	private final ConcurrentHashMap<String, Future<RedisSession>> _inflight = new ConcurrentHashMap<String, Future<RedisSession>>();
+
+	private final AtomicLong _started = new AtomicLong();
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+
+	public SessionPrefetcher(RedisManager manager, int threads, int queueSize) {
+		this._manager = manager;
+		this._executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			private final AtomicInteger _index = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "RedisManager-Prefetch-" + _index.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * ȡ,sessionIdѾڶȡʱڽеĶȡ
+	 *
+	 * @return ûʱnull
+	 */
+	Future<RedisSession> prefetch(final String id) {
+		Future<RedisSession> future = _inflight.get(id);
+		if (future != null) {
+			return future;
+		}
+		final AtomicBoolean claimed = new AtomicBoolean();
+		PrefetchTask task = new PrefetchTask(new Callable<RedisSession>() {
+			public RedisSession call() throws Exception {
+				if (!claimed.compareAndSet(false, true)) { //߳Ѿȡ
+					return null;
+				}
+				return _manager.loadSession(id);
+			}
+		}, claimed);
+		future = _inflight.putIfAbsent(id, task);
+		if (future != null) {
+			return future;
+		}
+		try {
+			_executor.execute(task);
+			_started.incrementAndGet();
+			return task;
+		} catch (RejectedExecutionException ex) {
+			_inflight.remove(id, task);
+			_rejected.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * findSession()ȡsessionIdĶȡ
+	 *
+	 * @return ûԤʱnull
+	 */
+	Future<RedisSession> take(String id) {
+		Future<RedisSession> future = _inflight.remove(id);
+		if (future != null) {
+			_hits.incrementAndGet();
+		}
+		return future;
+	}
+
+	/**
+	 * ʱûбfindSession()ȡߵĶȡ
+	 */
+	void discard(String id, Future<RedisSession> future) {
+		if (_inflight.remove(id, future)) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * ȡûпʼʱȡ
+	 *
+	 * @return ȡ,ɵԼȡ;falseʾȡѾʼѾ,Եȴ
+	 */
+	static boolean cancelIfNotStarted(Future<RedisSession> future) {
+		if (!(future instanceof PrefetchTask) || !((PrefetchTask) future)._claimed.compareAndSet(false, true)) {
+			return false;
+		}
+		future.cancel(false);
+		return true;
+	}
+
+	void stop() {
+		_executor.shutdownNow();
+		_inflight.clear();
+	}
+
+	public long getStarted() {
+		return _started.get();
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getRejected() {
+		return _rejected.get();
+	}
+
+	/**
+	 * ̺߳߳˭Ȱ_claimedΪtrue˭ȡ
+	 */
+	private static final class PrefetchTask extends FutureTask<RedisSession> {
+		private final AtomicBoolean _claimed;
+
+		PrefetchTask(Callable<RedisSession> callable, AtomicBoolean claimed) {
+			super(callable);
+			this._claimed = claimed;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package org.apache.catalina.session.ext;
+
+import java.io.IOException;
+
+/**
+ * ֵлʽ,<Manager>serializer.
+ * <p>
+ * ʵҪ޲Ĺ캯,̰߳ȫ,ͬһʵᱻ߳ͬʱʹ.
+ *
+ * @author wjw
+ */
+public interface SessionSerializer {
+	/**
+	 * ʱһ
+	 * 
+	 * @param classLoader
+	 *          webӦõClassLoader,лʱֵ
+	 */
+	void init(ClassLoader classLoader);
+
+	byte[] serialize(Object obj) throws IOException;
+
+	Object deserialize(byte[] data) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,222 @@
+package org.apache.catalina.session.ext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.catalina.Session;
+
+/**
+ * sessionԵĴСлͳ,עJMX MBean.
+ * <p>
+ * ÿ߳ÿsampleRatesetAttribute()һ,¼лֽ(2ݷͰֱͼ)
+ * ֽлʱ;ûбĵֻһ̱߳صļ.
+ * sessionֽдʱͳ,鿴ʱRedisSessionѾµֽ.
+ * ҳռredisڴʹ.
+ *
+ * @author wjw
+ */
+public class SessionTelemetry implements SessionTelemetryMBean {
+	//ֱͼͰ:<=64,<=128...<=4M,>4M
+	private static final int MIN_BUCKET_SHIFT = 6;
+	private static final int BUCKETS = 18;
+	//ͳƵ,ֹǶ̬ɵʱ
+	private static final int MAX_ATTRIBUTES = 10000;
+
+	private final RedisManager _manager;
+	private final int _sampleRate;
+	private final int _topN;
+	private final ConcurrentHashMap<String, AttributeStats> _attributes = new ConcurrentHashMap<String, AttributeStats>();
+	private final AtomicLong _sampledWrites = new AtomicLong();
+
+	private final ThreadLocal<int[]> _counter = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	public SessionTelemetry(RedisManager manager, int sampleRate, int topN) {
+		this._manager = manager;
+		this._sampleRate = sampleRate;
+		this._topN = topN;
+	}
+
+	/**
+	 * setAttribute()ʱ,һǷ
+	 */
+	boolean sample() {
+		int[] counter = _counter.get();
+		if (++counter[0] < _sampleRate) {
+			return false;
+		}
+		counter[0] = 0;
+		return true;
+	}
+
+	/**
+	 * ¼һβ
+	 *
+	 * @param size
+	 *          лֽ
+	 * @param nanos
+	 *          лʱ
+	 */
+	void record(String name, int size, long nanos) {
+		AttributeStats stats = _attributes.get(name);
+		if (stats == null) {
+			if (_attributes.size() >= MAX_ATTRIBUTES) {
+				return;
+			}
+			stats = new AttributeStats(name);
+			AttributeStats old = _attributes.putIfAbsent(name, stats);
+			if (old != null) {
+				stats = old;
+			}
+		}
+		stats.record(size, nanos);
+		_sampledWrites.incrementAndGet();
+	}
+
+	public int getSampleRate() {
+		return _sampleRate;
+	}
+
+	public long getSampledWrites() {
+		return _sampledWrites.get();
+	}
+
+	public int getAttributeCount() {
+		return _attributes.size();
+	}
+
+	public String[] getLargestAttributes() {
+		return topAttributes(new Comparator<AttributeStats>() {
+			public int compare(AttributeStats o1, AttributeStats o2) {
+				return compareLong(o2.getAverageSize(), o1.getAverageSize());
+			}
+		});
+	}
+
+	public String[] getCostliestAttributes() {
+		return topAttributes(new Comparator<AttributeStats>() {
+			public int compare(AttributeStats o1, AttributeStats o2) {
+				return compareLong(o2.bytes.get(), o1.bytes.get());
+			}
+		});
+	}
+
+	public String[] getLargestSessions() {
+		List<Object[]> sizes = new ArrayList<Object[]>();
+		for (Session session : _manager.findSessions()) {
+			if (session instanceof RedisSession) {
+				RedisSession redisSession = (RedisSession) session;
+				sizes.add(new Object[] { redisSession.getIdInternal(), redisSession.getEstimatedSize(), redisSession._attributeSizes.size() });
+			}
+		}
+		Collections.sort(sizes, new Comparator<Object[]>() {
+			public int compare(Object[] o1, Object[] o2) {
+				return compareLong((Long) o2[1], (Long) o1[1]);
+			}
+		});
+
+		int count = Math.min(_topN, sizes.size());
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			Object[] size = sizes.get(i);
+			result[i] = size[0] + ": size=" + size[1] + ",attributes=" + size[2];
+		}
+		return result;
+	}
+
+	public String getSizeHistogram(String name) {
+		AttributeStats stats = _attributes.get(name);
+		return (stats == null) ? "" : stats.histogram();
+	}
+
+	public void reset() {
+		_attributes.clear();
+		_sampledWrites.set(0);
+	}
+
+	private String[] topAttributes(Comparator<AttributeStats> comparator) {
+		List<AttributeStats> list = new ArrayList<AttributeStats>(_attributes.values());
+		Collections.sort(list, comparator);
+		int count = Math.min(_topN, list.size());
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = list.get(i).toString();
+		}
+		return result;
+	}
+
+	private static int compareLong(long x, long y) {
+		return (x < y) ? -1 : ((x == y) ? 0 : 1);
+	}
+
+	private static int bucket(int size) {
+		int bucket = 0;
+		while (bucket < BUCKETS - 1 && size > (1 << (MIN_BUCKET_SHIFT + bucket))) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	/**
+	 * һĲͳ
+	 */
+	private final class AttributeStats {
+		final String name;
+		final AtomicLong samples = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+		final AtomicLong maxSize = new AtomicLong();
+		final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		AttributeStats(String name) {
+			this.name = name;
+		}
+
+		void record(int size, long nanos) {
+			samples.incrementAndGet();
+			bytes.addAndGet(size);
+			this.nanos.addAndGet(nanos);
+			histogram.incrementAndGet(bucket(size));
+			long max;
+			while (size > (max = maxSize.get()) && !maxSize.compareAndSet(max, size)) {
+			}
+		}
+
+		long getAverageSize() {
+			long count = samples.get();
+			return (count == 0) ? 0 : bytes.get() / count;
+		}
+
+		String histogram() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < BUCKETS; i++) {
+				long count = histogram.get(i);
+				if (count == 0) {
+					continue;
+				}
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append((i == BUCKETS - 1) ? ">" + (1 << (MIN_BUCKET_SHIFT + i - 1)) : "<=" + (1 << (MIN_BUCKET_SHIFT + i))).append(':').append(count);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			long count = samples.get();
+			return name + ": estimatedWrites=" + (count * _sampleRate) + ",avgSize=" + getAverageSize() + ",maxSize=" + maxSize.get()
+			    + ",estimatedBytes=" + (bytes.get() * _sampleRate) + ",avgSerializeMicros=" + ((count == 0) ? 0 : nanos.get() / count / 1000L)
+			    + ",histogram=[" + histogram() + "]";
+		}
+	}
+}
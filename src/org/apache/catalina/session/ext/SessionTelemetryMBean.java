@@ -0,0 +1,48 @@
+package org.apache.catalina.session.ext;
+
+/**
+ * SessionTelemetryJMXӿ
+ *
+ * @author wjw
+ */
+public interface SessionTelemetryMBean {
+	/**
+	 * ÿٴsetAttribute()һ
+	 */
+	int getSampleRate();
+
+	/**
+	 * д
+	 */
+	long getSampledWrites();
+
+	/**
+	 * Ĳͬ
+	 */
+	int getAttributeCount();
+
+	/**
+	 * лƽֽtopN
+	 */
+	String[] getLargestAttributes();
+
+	/**
+	 * дredisֽ(ƽֽ*Ƶд)topN
+	 */
+	String[] getCostliestAttributes();
+
+	/**
+	 * ڵлֽtopNsession
+	 */
+	String[] getLargestSessions();
+
+	/**
+	 * һлֱֽͼ
+	 */
+	String getSizeHistogram(String name);
+
+	/**
+	 * ͳ
+	 */
+	void reset();
+}
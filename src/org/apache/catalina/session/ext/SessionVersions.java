@@ -0,0 +1,140 @@
+package org.apache.catalina.session.ext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * ճģʽ°汾ͬsession.
+ * <p>
+ * session hashFIELDsessionİ汾,hash "TS:sessionId:versions"ÿԵİ汾(->汾),
+ * ÿдɾʱ,ͬһpipelineHINCRBY.
+ * ڵסԼѾͬsession汾źÿԵİ汾,ÿһζȡʱSYNC_SCRIPTһ"汾N֮ʲô":
+ * û޸ʱֻذ汾,޸ʱٷԵİ汾,ֻȡذ汾źͱزͬ.
+ * 󲿷ֻsessionÿֻһκС,Զӱضȡ.
+ *
+ * @author wjw
+ */
+public class SessionVersions {
+	static final String FIELD = "__[version]__";
+	static final byte[] FIELD_BYTES = SafeEncoder.encode(FIELD);
+	static final String VERSIONS_SUFFIX = ":versions";
+
+	/**
+	 * KEYS[1]=session key,KEYS[2]=԰汾ŵkey,ARGV[1]=ڵѾͬİ汾,ARGV[2]=汾ŵfield.
+	 * 汾ûб仯ʱ{汾},򷵻{汾,1,汾1,2,汾2...}
+	 */
+	static final RedisLuaScript SYNC_SCRIPT = new RedisLuaScript(""
+	    + "local version = redis.call('HGET', KEYS[1], ARGV[2]) or '0'\n"
+	    + "if version == ARGV[1] then return {version} end\n"
+	    + "local versions = redis.call('HGETALL', KEYS[2])\n"
+	    + "table.insert(versions, 1, version)\n"
+	    + "return versions\n");
+
+	private final AtomicLong _checks = new AtomicLong();
+	private final AtomicLong _refreshed = new AtomicLong();
+
+	static byte[] versionsKey(String sessionId) {
+		return SafeEncoder.encode(RedisManager.TOMCAT_SESSION_PREFIX + sessionId + VERSIONS_SUFFIX);
+	}
+
+	/**
+	 * ޸ԵpipelinesessionЩԵİ汾
+	 *
+	 * @return pipelineִȡ°汾
+	 */
+	Stamp record(Pipeline pipeline, String sessionId, String... names) {
+		byte[] versionsKey = versionsKey(sessionId);
+		Response<Long> version = pipeline.hincrBy(SafeEncoder.encode(RedisManager.TOMCAT_SESSION_PREFIX + sessionId), FIELD_BYTES, 1);
+		List<Response<Long>> attributeVersions = new ArrayList<Response<Long>>(names.length);
+		for (String name : names) {
+			attributeVersions.add(pipeline.hincrBy(versionsKey, SafeEncoder.encode(name), 1));
+		}
+		return new Stamp(sessionId, names, version, attributeVersions);
+	}
+
+	/**
+	 * SYNC_SCRIPTķֵ
+	 *
+	 * @return 汾ûб仯ʱ԰汾null
+	 */
+	static Delta parse(List<?> reply) {
+		long version = Long.parseLong(SafeEncoder.encode((byte[]) reply.get(0)));
+		if (reply.size() == 1) {
+			return new Delta(version, null);
+		}
+		Map<String, Long> attributeVersions = new HashMap<String, Long>();
+		for (int i = 1; i + 1 < reply.size(); i += 2) {
+			attributeVersions.put(SafeEncoder.encode((byte[]) reply.get(i)), Long.valueOf(SafeEncoder.encode((byte[]) reply.get(i + 1))));
+		}
+		return new Delta(version, attributeVersions);
+	}
+
+	/**
+	 * redis֧luaűʱ,pipelineȡصİ汾ź԰汾
+	 */
+	static Delta parse(byte[] version, Map<String, String> versions) {
+		Map<String, Long> attributeVersions = new HashMap<String, Long>();
+		for (Map.Entry<String, String> entry : versions.entrySet()) {
+			attributeVersions.put(entry.getKey(), Long.valueOf(entry.getValue()));
+		}
+		return new Delta((version == null) ? 0 : Long.parseLong(SafeEncoder.encode(version)), attributeVersions);
+	}
+
+	void recordCheck(int refreshed) {
+		_checks.incrementAndGet();
+		_refreshed.addAndGet(refreshed);
+	}
+
+	public long getChecks() {
+		return _checks.get();
+	}
+
+	public long getRefreshed() {
+		return _refreshed.get();
+	}
+
+	/**
+	 * һдİ汾,pipelineִܶȡ
+	 */
+	static final class Stamp {
+		final String sessionId;
+		final String[] names;
+		private final Response<Long> _version;
+		private final List<Response<Long>> _attributeVersions;
+
+		Stamp(String sessionId, String[] names, Response<Long> version, List<Response<Long>> attributeVersions) {
+			this.sessionId = sessionId;
+			this.names = names;
+			this._version = version;
+			this._attributeVersions = attributeVersions;
+		}
+
+		long getVersion() {
+			return _version.get();
+		}
+
+		long getAttributeVersion(int index) {
+			return _attributeVersions.get(index).get();
+		}
+	}
+
+	/**
+	 * redissessionİ汾,Ͱ汾ű仯ʱԵİ汾
+	 */
+	static final class Delta {
+		final long version;
+		final Map<String, Long> attributeVersions;
+
+		Delta(long version, Map<String, Long> attributeVersions) {
+			this.version = version;
+			this.attributeVersions = attributeVersions;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package org.apache.catalina.session.ext;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * redis۶ϴʱ׳,redis.
+ * ۶ڼÿ󶼿׳,Բջ.
+ *
+ * @author wjw
+ */
+public class ShardUnavailableException extends JedisConnectionException {
+	private static final long serialVersionUID = 1L;
+
+	public ShardUnavailableException(String shard) {
+		super("redis unavailable(circuit breaker open):" + shard);
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
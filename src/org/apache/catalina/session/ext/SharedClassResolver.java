@@ -0,0 +1,134 @@
+package org.apache.catalina.session.ext;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+
+/**
+ * SessionClassRegistryŴKryo ClassResolver.
+ * <p>
+ * ע(KryoԴĺKryoSerializerע),ûעڵһʱSessionClassRegistryȡ,
+ * עΪID_BASE+.ʶʱ,SessionClassRegistryע.
+ * ǰдȻԶȡ.̰߳ȫ,ÿKryoʵһ.
+ * <p>
+ * Kryoĵһֽ(ע+2)varint,127ʱһֽ0x80|7λ.
+ * ѹͷֿĸʽͷRESERVED_HEADERͷ,SessionClassRegistryһֽڻRESERVED_HEADER,
+ * ѾŵȻд.
+ * <p>
+ * ֱӴredisӵ뻺лʱ,ӻͣڻظ;,Ҫӳٽһ,ӳʱͻʧ.
+ * ʽȡڼֻñػ,ʶʱ׳UnresolvedClassException,ɵ߸Ϊȡֵٷл.
+ *
+ * @author wjw
+ */
+public class SharedClassResolver extends DefaultClassResolver {
+	//ŵʼֵ,Ҫڱעĸ
+	static final int ID_BASE = 1000;
+	//Kryoֽڿͷ
+	static final byte RESERVED_HEADER = (byte) 0xC5;
+
+	//ǰ߳ڴredisʽл
+	private static final ThreadLocal<Boolean> STREAMING = new ThreadLocal<Boolean>();
+
+	private final SessionClassRegistry _registry;
+
+	public SharedClassResolver(SessionClassRegistry registry) {
+		this._registry = registry;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes") //DefaultClassResolverĲԭʼClass,дClass<?>ܸ
+	public Registration registerImplicit(Class type) {
+		if (type.getName().contains("$$")) { //cglib֮ʱɵ,ÿڵϵһ
+			return super.registerImplicit(type);
+		}
+		Integer id = _registry.idFor(type.getName());
+		if (id == null || isReserved(id)) {
+			return super.registerImplicit(type);
+		}
+		return register(new Registration(type, kryo.getDefaultSerializer(type), ID_BASE + id));
+	}
+
+	@Override
+	public Registration getRegistration(int classID) {
+		Registration registration = super.getRegistration(classID);
+		if (registration != null || classID < ID_BASE) {
+			return registration;
+		}
+
+		boolean streaming = STREAMING.get() != null;
+		String className = streaming ? _registry.cachedNameFor(classID - ID_BASE) : _registry.nameFor(classID - ID_BASE);
+		if (className == null) {
+			if (streaming) {
+				throw new UnresolvedClassException(classID - ID_BASE);
+			}
+			return null;
+		}
+		Class<?> type;
+		try {
+			type = Class.forName(className, false, kryo.getClassLoader());
+		} catch (ClassNotFoundException ex) {
+			throw new KryoException("Unable to find class: " + className, ex);
+		}
+		return register(new Registration(type, kryo.getDefaultSerializer(type), classID));
+	}
+
+	/**
+	 * ʼڵǰ߳ʽл,ʱҪendStreaming()
+	 */
+	static void beginStreaming() {
+		STREAMING.set(Boolean.TRUE);
+	}
+
+	static void endStreaming() {
+		STREAMING.remove();
+	}
+
+	/**
+	 * @return excauseǷʽȡʱ˱زʶ
+	 */
+	static boolean isUnresolved(Throwable ex) {
+		for (Throwable t = ex; t != null; t = t.getCause()) {
+			if (t instanceof UnresolvedClassException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return дĵһֽǷRESERVED_HEADER
+	 */
+	static boolean isReserved(long id) {
+		long value = ID_BASE + id + 2;
+		return value > 127 && (0x80 | (value & 0x7F)) == (RESERVED_HEADER & 0xFF);
+	}
+
+	@Override
+	public Registration readClass(Input input) {
+		int classID = input.readVarInt(true);
+		if (classID == Kryo.NULL) {
+			return null;
+		}
+		if (classID == NAME + 2) {
+			return readName(input);
+		}
+		Registration registration = getRegistration(classID - 2);
+		if (registration == null) {
+			throw new KryoException("Encountered unregistered class ID: " + (classID - 2));
+		}
+		return registration;
+	}
+
+	/**
+	 * ʽȡʱ˱زʶ
+	 */
+	static final class UnresolvedClassException extends KryoException {
+		private static final long serialVersionUID = 1L;
+
+		UnresolvedClassException(int id) {
+			super("class id not cached locally:" + id);
+		}
+	}
+}
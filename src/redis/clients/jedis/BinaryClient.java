@@ -208,6 +208,11 @@ public class BinaryClient extends Connection {
 	sendCommand(HSET, key, field, value);
     }
 
+    public void hset(final byte[] key, final byte[] field,
+	    final BulkArgument value) {
+	sendCommand(HSET, value, key, field);
+    }
+
     public void hget(final byte[] key, final byte[] field) {
 	sendCommand(HGET, key, field);
     }
@@ -697,6 +697,18 @@ public class BinaryJedis implements BinaryJedisCommands {
 	return client.getIntegerReply();
     }
 
+    /**
+     * Same as {@link #hset(byte[], byte[], byte[])} but the value is written
+     * by the {@link BulkArgument} directly into the connection's output
+     * buffer.
+     */
+    public Long hset(final byte[] key, final byte[] field,
+	    final BulkArgument value) {
+	checkIsInMulti();
+	client.hset(key, field, value);
+	return client.getIntegerReply();
+    }
+
     /**
      * If key holds a hash, retrieve the value associated to the specified
      * field.
@@ -716,6 +728,17 @@ public class BinaryJedis implements BinaryJedisCommands {
 	return client.getBinaryBulkReply();
     }
 
+    /**
+     * Same as {@link #hget(byte[], byte[])} but the value is handed to
+     * <code>reader</code> as a stream over the connection's input buffer.
+     */
+    public <T> T hget(final byte[] key, final byte[] field,
+	    final BulkReplyReader<T> reader) {
+	checkIsInMulti();
+	client.hget(key, field);
+	return client.getBulkReply(reader);
+    }
+
     /**
      * 
      * Set the specified hash field to the specified value if the field not
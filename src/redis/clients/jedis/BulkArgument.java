@@ -0,0 +1,19 @@
+package redis.clients.jedis;
+
+import java.io.IOException;
+
+import redis.clients.util.RedisOutputStream;
+
+/**
+ * A bulk argument that writes itself straight into the connection's output
+ * buffer instead of being materialized as a byte[] first. The length has to
+ * be known before writing because it is sent as the bulk length prefix.
+ */
+public interface BulkArgument {
+    /**
+     * @return the exact number of bytes {@link #writeTo} will write
+     */
+    int length();
+
+    void writeTo(RedisOutputStream os) throws IOException;
+}
@@ -0,0 +1,16 @@
+package redis.clients.jedis;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes a bulk reply directly from the connection's input buffer instead
+ * of receiving it as a freshly allocated byte[].
+ * 
+ * The stream passed to {@link #read} is bounded to the bulk payload. Bytes the
+ * reader leaves unread are skipped afterwards, so the connection stays usable
+ * even if the reader stops early or throws.
+ */
+public interface BulkReplyReader<T> {
+    T read(InputStream in, int length) throws IOException;
+}
@@ -85,6 +85,14 @@ public class Connection {
         return this;
     }
     
+    protected Connection sendCommand(final Command cmd,
+	    final BulkArgument lastArg, final byte[]... args) {
+        connect();
+        Protocol.sendCommand(outputStream, cmd, lastArg, args);
+        pipelinedCommands++;
+        return this;
+    }
+
     protected Connection sendCommand(final Command cmd) {
         connect();
         Protocol.sendCommand(outputStream, cmd, new byte[0][]);
@@ -185,6 +193,12 @@ public class Connection {
         return (byte[]) Protocol.read(inputStream);
     }
 
+    public <T> T getBulkReply(final BulkReplyReader<T> reader) {
+        flush();
+        pipelinedCommands--;
+        return Protocol.readBulk(inputStream, reader);
+    }
+
     public Long getIntegerReply() {
         flush();
         pipelinedCommands--;
@@ -250,9 +250,9 @@ public class Pipeline extends Queable {
         return getResponse(BuilderFactory.STRING);
     }
 
-    public Response<String> hget(byte[] key, byte[] field) {
+    public Response<byte[]> hget(byte[] key, byte[] field) {
         client.hget(key, field);
-        return getResponse(BuilderFactory.STRING);
+        return getResponse(BuilderFactory.BYTE_ARRAY);
     }
 
     public Response<Map<String, String>> hgetAll(String key) {
@@ -325,6 +325,11 @@ public class Pipeline extends Queable {
         return getResponse(BuilderFactory.LONG);
     }
 
+    public Response<Long> hset(byte[] key, byte[] field, BulkArgument value) {
+        client.hset(key, field, value);
+        return getResponse(BuilderFactory.LONG);
+    }
+
     public Response<Long> hsetnx(String key, String field, String value) {
         client.hsetnx(key, field, value);
         return getResponse(BuilderFactory.LONG);
@@ -54,6 +54,37 @@ public final class Protocol {
 	}
     }
 
+    /**
+     * Sends a command whose last argument is written by a {@link BulkArgument}
+     * directly into the output stream.
+     */
+    public static void sendCommand(final RedisOutputStream os,
+	    final Command command, final BulkArgument lastArg,
+	    final byte[]... args) {
+	try {
+	    os.write(ASTERISK_BYTE);
+	    os.writeIntCrLf(args.length + 2);
+	    os.write(DOLLAR_BYTE);
+	    os.writeIntCrLf(command.raw.length);
+	    os.write(command.raw);
+	    os.writeCrLf();
+
+	    for (final byte[] arg : args) {
+		os.write(DOLLAR_BYTE);
+		os.writeIntCrLf(arg.length);
+		os.write(arg);
+		os.writeCrLf();
+	    }
+
+	    os.write(DOLLAR_BYTE);
+	    os.writeIntCrLf(lastArg.length());
+	    lastArg.writeTo(os);
+	    os.writeCrLf();
+	} catch (IOException e) {
+	    throw new JedisConnectionException(e);
+	}
+    }
+
     private static void processError(final RedisInputStream is) {
 	String message = is.readLine();
 	throw new JedisDataException(message);
@@ -106,6 +137,54 @@ public final class Protocol {
 	return read;
     }
 
+    /**
+     * Reads a bulk reply through <code>reader</code> without allocating a
+     * byte[] for the payload.
+     * 
+     * @return null for a nil reply, otherwise whatever the reader returns
+     */
+    public static <T> T readBulk(final RedisInputStream is,
+	    final BulkReplyReader<T> reader) {
+	try {
+	    byte b = is.readByte();
+	    if (b == MINUS_BYTE) {
+		processError(is);
+	    } else if (b != DOLLAR_BYTE) {
+		throw new JedisConnectionException("Unexpected reply: "
+			+ (char) b + ", expected bulk reply");
+	    }
+	    int len = Integer.parseInt(is.readLine());
+	    if (len == -1) {
+		return null;
+	    }
+	    RedisInputStream.BoundedInputStream in = is.bounded(len);
+	    T value = null;
+	    Exception readerFailure = null;
+	    try {
+		value = reader.read(in, len);
+	    } catch (JedisConnectionException e) {
+		throw e;
+	    } catch (IOException e) {
+		readerFailure = e;
+	    } catch (RuntimeException e) {
+		readerFailure = e;
+	    } finally {
+		in.skipRemaining();
+		// read 2 more bytes for the command delimiter
+		is.readByte();
+		is.readByte();
+	    }
+	    if (readerFailure != null) {
+		// the reply was consumed, so the connection is still usable
+		throw new JedisDataException("Could not read bulk reply",
+			readerFailure);
+	    }
+	    return value;
+	} catch (IOException e) {
+	    throw new JedisConnectionException(e);
+	}
+    }
+
     private static Long processInteger(final RedisInputStream is) {
 	String num = is.readLine();
 	return Long.valueOf(num);
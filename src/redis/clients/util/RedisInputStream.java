@@ -105,8 +105,94 @@ public class RedisInputStream extends FilterInputStream {
         return length;
     }
 
+    /**
+     * Returns a view of the next <code>length</code> bytes that reads straight
+     * from this stream's buffer.
+     */
+    public BoundedInputStream bounded(final int length) {
+        return new BoundedInputStream(length);
+    }
+
     private void fill() throws IOException {
         limit = in.read(buf);
         count = 0;
     }
+
+    /**
+     * Socket failures while reading the payload surface as
+     * JedisConnectionException, so an IOException that escapes a
+     * BulkReplyReader always comes from the reader itself.
+     */
+    public class BoundedInputStream extends InputStream {
+        private int remaining;
+
+        BoundedInputStream(final int length) {
+            this.remaining = length;
+        }
+
+        private void fillBuffer() {
+            try {
+                fill();
+            } catch (IOException e) {
+                throw new JedisConnectionException(e);
+            }
+            if (limit == -1) {
+                throw new JedisConnectionException(
+                        "It seems like server has closed the connection.");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (count == limit) {
+                fillBuffer();
+            }
+            remaining--;
+            return buf[count++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (count == limit) {
+                fillBuffer();
+            }
+            final int n = RedisInputStream.this.read(b, off,
+                    Math.min(len, remaining));
+            if (n == -1) {
+                throw new JedisConnectionException(
+                        "It seems like server has closed the connection.");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return Math.min(remaining, limit - count);
+        }
+
+        /**
+         * Discards whatever the consumer did not read.
+         */
+        public void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                if (count == limit) {
+                    fillBuffer();
+                }
+                final int n = Math.min(remaining, limit - count);
+                count += n;
+                remaining -= n;
+            }
+        }
+    }
 }
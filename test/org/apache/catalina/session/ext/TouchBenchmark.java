@@ -0,0 +1,92 @@
+package org.apache.catalina.session.ext;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * ȽRedisSession.access()ˢ¹ʱľɷʽTOUCH_SCRIPTĺʱ,Ҫһصredis(2.6).
+ * <p>
+ * ɷʽ:EXPIRE,0(key)ʱHSETʱ䡢EXPIRE,ڵkeyһ,ڵkey.
+ * ·ʽ:EVALSHAִTOUCH_SCRIPT,һ.redis 2.6ǰ˻طʽ(һpipeline)Ϊο.
+ * <p>
+ * :
+ * 
+ * <pre>
+ * mkdir bin
+ * javac -encoding GBK -cp "lib/*" -d bin `find src test -name "*.java"`
+ * java -cp "bin:lib/*" org.apache.catalina.session.ext.TouchBenchmark [host] [port] []
+ * </pre>
+ *
+ * @author wjw
+ */
+public class TouchBenchmark {
+	private static final int TTL = 1800;
+
+	public static void main(String[] args) {
+		String host = (args.length > 0) ? args[0] : "127.0.0.1";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : 6379;
+		int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+
+		Jedis jedis = new Jedis(host, port);
+		try {
+			jedis.connect();
+			byte[] metadata = SafeEncoder.encode(String.valueOf(System.currentTimeMillis()));
+
+			//Ԥ:ؽű,JIT
+			run(jedis, "warmup", iterations / 10, true, metadata, 0);
+			run(jedis, "warmup", iterations / 10, false, metadata, 0);
+
+			System.out.println("iterations=" + iterations);
+			for (int mode = 0; mode < 3; mode++) {
+				run(jedis, "existing key", iterations, true, metadata, mode);
+				run(jedis, "missing key", iterations, false, metadata, mode);
+			}
+		} finally {
+			jedis.disconnect();
+		}
+	}
+
+	/**
+	 * @param mode
+	 *          0:ɷʽ,1:TOUCH_SCRIPT,2:redis 2.6ǰpipeline
+	 */
+	private static void run(Jedis jedis, String label, int iterations, boolean existing, byte[] metadata, int mode) {
+		long nanos = 0;
+		for (int i = 0; i < iterations; i++) {
+			String id = "bench-" + i;
+			byte[] key = SafeEncoder.encode(RedisManager.TOMCAT_SESSION_PREFIX + id);
+			byte[] chunkKey = SessionChunks.chunkKey(id);
+			byte[] versionsKey = SessionVersions.versionsKey(id);
+			if (existing) {
+				jedis.hset(key, SessionMetadata.FIELD_BYTES, metadata);
+			} else {
+				jedis.del(key);
+			}
+
+			long start = System.nanoTime();
+			if (mode == 0) {
+				if (jedis.expire(key, TTL) == 0) {
+					jedis.hset(key, SafeEncoder.encode(RedisManager.CREATION_TIME_FIELD), metadata);
+					jedis.expire(key, TTL);
+				}
+			} else if (mode == 1) {
+				RedisManager.TOUCH_SCRIPT.eval(jedis, 3, key, chunkKey, versionsKey, Protocol.toByteArray(TTL), SessionMetadata.FIELD_BYTES, metadata);
+			} else {
+				Pipeline pipeline = jedis.pipelined();
+				pipeline.hset(key, SessionMetadata.FIELD_BYTES, metadata);
+				pipeline.expire(key, TTL);
+				pipeline.expire(chunkKey, TTL);
+				pipeline.expire(versionsKey, TTL);
+				pipeline.sync();
+			}
+			nanos += System.nanoTime() - start;
+			jedis.del(key);
+		}
+		if (!"warmup".equals(label)) {
+			String name = (mode == 0) ? "EXPIRE(+HSET+EXPIRE)" : ((mode == 1) ? "TOUCH_SCRIPT" : "pipeline(<2.6)");
+			System.out.println(name + "," + label + ": " + (nanos / 1000L / iterations) + " us/op");
+		}
+	}
+}